@@ -24,24 +24,41 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.lang.ref.WeakReference;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.List;
 import java.util.TimeZone;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import com.glanznig.beepme.data.PreferenceHandler;
 import com.glanznig.beepme.data.Sample;
+import com.glanznig.beepme.data.SchedulerState;
 import com.glanznig.beepme.data.TimerProfile;
+import com.glanznig.beepme.data.Uptime;
 import com.glanznig.beepme.db.SampleTable;
 import com.glanznig.beepme.db.ScheduledBeepTable;
 import com.glanznig.beepme.db.StorageHandler;
 import com.glanznig.beepme.db.TimerProfileTable;
 import com.glanznig.beepme.db.UptimeTable;
 import com.glanznig.beepme.helper.AsyncImageScaler;
+import com.glanznig.beepme.helper.BeepAlarmReceiver;
+import com.glanznig.beepme.helper.BeepSoundPool;
+import com.glanznig.beepme.helper.BitmapPool;
+import com.glanznig.beepme.helper.LocalDay;
+import com.glanznig.beepme.helper.PhotoLoader;
 import com.glanznig.beepme.helper.PhotoUtils;
+import com.glanznig.beepme.helper.RandomStateStore;
+import com.glanznig.beepme.helper.StartupPipeline;
+import com.glanznig.beepme.helper.ThumbnailCache;
 import com.glanznig.beepme.view.BeepActivity;
 import com.glanznig.beepme.view.ExportActivity;
 import com.glanznig.beepme.view.MainActivity;
 
 import android.app.Activity;
+import android.app.ActivityManager;
 import android.app.AlarmManager;
 import android.app.Application;
 import android.app.NotificationManager;
@@ -51,6 +68,7 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
+import android.os.Build;
 import android.os.Environment;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
@@ -62,8 +80,19 @@ import android.util.Log;
 public class BeeperApp extends Application { //implements SharedPreferences.OnSharedPreferenceChangeListener {
 	
 	private PreferenceHandler preferences = null;
-	private TimerProfile timerProfile;
+	// both are set by the startup stages on a background thread
+	private volatile TimerProfile timerProfile;
+	private volatile SchedulerState schedulerState;
+	private final Object schedulerStateLock = new Object();
 	private BeeperApp.CallStateListener callStateListener;
+	private StartupPipeline startup = null;
+	private BeepSoundPool beepSoundPool = null;
+	private ThumbnailCache thumbnailCache = null;
+	private PhotoLoader photoLoader = null;
+	private BitmapPool bitmapPool = null;
+	private ThreadPoolExecutor writeExecutor = null;
+	// preferences only keep a weak reference to their listeners
+	private SharedPreferences.OnSharedPreferenceChangeListener preferenceListener = null;
 	
 	private static final int ALARM_INTENT_ID = 5332;
 	private static final int NOTIFICATION_ID = 1283;
@@ -73,6 +102,14 @@ public class BeeperApp extends Application { //implements SharedPreferences.OnSh
 	public static final int BEEPER_ACTIVE = 1;
 	public static final int BEEPER_INACTIVE_AFTER_CALL = 2;
 	
+	private static final String STAGE_UPDATE = "update";
+	private static final String STAGE_LISTENERS = "listeners";
+	private static final String STAGE_TIMER_PROFILE = "timerProfile";
+	private static final String STAGE_SCHEDULER_STATE = "schedulerState";
+	private static final String STAGE_PREFERENCES = "preferences";
+	private static final String STAGE_BEEP_SOUND = "beepSound";
+	private static final String STAGE_BEEPER = "beeper";
+	
 	public PreferenceHandler getPreferences() {
 		if (preferences == null) {
 			preferences = new PreferenceHandler(this.getApplicationContext());
@@ -92,25 +129,160 @@ public class BeeperApp extends Application { //implements SharedPreferences.OnSh
 	}
 	
 	public void setBeeperActive(int active) {
-		UptimeTable uptimeTbl = new UptimeTable(this.getApplicationContext(), timerProfile);
+		// must not interfere with restoring the beeper state at startup
+		if (startup != null) {
+			startup.await(STAGE_SCHEDULER_STATE);
+			startup.await(STAGE_BEEPER);
+		}
 		getPreferences().setBeeperActive(active);
 		
 		if (active == BEEPER_ACTIVE) {
-			getPreferences().setUptimeId(uptimeTbl.startUptime(Calendar.getInstance().getTime()));
+			startUptime();
 			createNotification();
+			getBeepSoundPool();
 		}
 		else {
 			long uptimeId = getPreferences().getUptimeId();
 			
 			if (uptimeId != 0L) {
-				uptimeTbl.endUptime(uptimeId, Calendar.getInstance().getTime());
-				getPreferences().setUptimeId(0L);
+				new ScheduledBeepTable(this.getApplicationContext()).removePlannedBeeps(uptimeId,
+						getPreferences().getScheduledBeepId());
+				endUptime(uptimeId);
 				NotificationManager manager = (NotificationManager)getSystemService(Context.NOTIFICATION_SERVICE);
 				manager.cancel(TAG, NOTIFICATION_ID);
 			}
 		}
 	}
 	
+	private void startUptime() {
+		Date start = Calendar.getInstance().getTime();
+		getPreferences().setUptimeId(new UptimeTable(this.getApplicationContext(), timerProfile).startUptime(start));
+		getSchedulerState().uptimeStarted(start.getTime(), getMinUptimeDuration());
+	}
+	
+	private void endUptime(long uptimeId) {
+		Date end = Calendar.getInstance().getTime();
+		new UptimeTable(this.getApplicationContext(), timerProfile).endUptime(uptimeId, end);
+		getPreferences().setUptimeId(0L);
+		getSchedulerState().uptimeEnded(end.getTime(), getMinUptimeDuration());
+	}
+	
+	private int getMinUptimeDuration() {
+		if (timerProfile != null) {
+			return timerProfile.getMinUptimeDuration();
+		}
+		
+		return 60;
+	}
+	
+	/**
+	 * Returns the pool holding the selected beep sound, loading it first if needed.
+	 */
+	public synchronized BeepSoundPool getBeepSoundPool() {
+		if (beepSoundPool == null) {
+			beepSoundPool = new BeepSoundPool(this);
+		}
+		beepSoundPool.load(Integer.valueOf(getPreferences().getBeepSoundId()));
+		
+		return beepSoundPool;
+	}
+	
+	/**
+	 * Returns the in-memory cache of decoded thumbnails shared by all views.
+	 */
+	public synchronized ThumbnailCache getThumbnailCache() {
+		if (thumbnailCache == null) {
+			thumbnailCache = new ThumbnailCache(this);
+		}
+		
+		return thumbnailCache;
+	}
+	
+	public synchronized PhotoLoader getPhotoLoader() {
+		if (photoLoader == null) {
+			photoLoader = new PhotoLoader(this, getThumbnailCache());
+		}
+		
+		return photoLoader;
+	}
+	
+	/**
+	 * Returns the pool of bitmaps that can be reused when photos are scaled.
+	 */
+	public synchronized BitmapPool getBitmapPool() {
+		if (bitmapPool == null) {
+			ActivityManager activityManager = (ActivityManager)getSystemService(Context.ACTIVITY_SERVICE);
+			bitmapPool = new BitmapPool(activityManager.getMemoryClass() * 1024 * 1024 / 4);
+		}
+		
+		return bitmapPool;
+	}
+	
+	/**
+	 * Returns the single background thread for small database writes that must not block the
+	 * main thread, the writes are done in the order they are submitted.
+	 */
+	public synchronized Executor getWriteExecutor() {
+		if (writeExecutor == null) {
+			writeExecutor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+					new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					return new Thread(r, "writer");
+				}
+			});
+			writeExecutor.allowCoreThreadTimeOut(true);
+		}
+		
+		return writeExecutor;
+	}
+	
+	public SchedulerState getSchedulerState() {
+		if (startup != null) {
+			startup.await(STAGE_SCHEDULER_STATE);
+		}
+		if (schedulerState == null) {
+			loadSchedulerState();
+		}
+		
+		return schedulerState;
+	}
+	
+	// restores today's figures for the beep timer from the database, only done once per process
+	private void loadSchedulerState() {
+		// not the app's lock, setTimer() holds that one while waiting for this stage
+		synchronized (schedulerStateLock) {
+			if (schedulerState == null) {
+				schedulerState = createSchedulerState();
+			}
+		}
+	}
+	
+	private SchedulerState createSchedulerState() {
+		long today = LocalDay.today();
+		SchedulerState state = new SchedulerState(today);
+		
+		// uptimes are ordered by start, most recent first
+		List<Uptime> uptimes = new UptimeTable(this.getApplicationContext(), timerProfile).getUptimesOfDay(today);
+		for (int i = uptimes.size() - 1; i >= 0; i--) {
+			Uptime u = uptimes.get(i);
+			if (u.getEnd() != null) {
+				state.addUptime(u.getStart().getTime(), u.getEnd().getTime());
+			}
+			else if (i == 0) {
+				state.uptimeStarted(u.getStart().getTime(), getMinUptimeDuration());
+			}
+		}
+		
+		List<Integer> statuses = new ScheduledBeepTable(this.getApplicationContext()).getStatusesOfDay(today);
+		for (int i = 0; i < statuses.size(); i++) {
+			state.beepScheduled(LocalDay.startOf(today));
+			state.beepUpdated(statuses.get(i).intValue());
+		}
+		
+		return state;
+	}
+	
 	private void createNotification() {
 		NotificationCompat.Builder notificationBuilder = new NotificationCompat.Builder(this);
 		
@@ -147,52 +319,111 @@ public class BeeperApp extends Application { //implements SharedPreferences.OnSh
 	@Override
 	public void onCreate() {
 		super.onCreate();
-		getPreferences();
-		setTimerProfile();
-
-        onAppUpdate(getPreferences().getAppVersion());
-
-        // save thumbnail sizes
-        DisplayMetrics metrics = this.getResources().getDisplayMetrics();
-        int screenDpWidth = (int)(metrics.widthPixels / metrics.density + 0.5f);
-        int[] sizes = {48, 64, screenDpWidth};
-        getPreferences().setThumbnailSizes(sizes);
+		startup = new StartupPipeline();
 		
-		// listen to call events
-		if (callStateListener == null) {
-			callStateListener = new CallStateListener(BeeperApp.this);
-		}
-		TelephonyManager telManager = (TelephonyManager)getSystemService(Context.TELEPHONY_SERVICE);
-		telManager.listen(callStateListener, PhoneStateListener.LISTEN_CALL_STATE);
+		// only what has to be done before the first activity shows up runs here,
+		// the update may rename the database and has to be complete before it is opened
+		startup.runNow(STAGE_UPDATE, new Runnable() {
+			@Override
+			public void run() {
+				onAppUpdate(getPreferences().getAppVersion());
+			}
+		});
+		
+		// phone state listener needs the main looper
+		startup.runNow(STAGE_LISTENERS, new Runnable() {
+			@Override
+			public void run() {
+				// listen to call events
+				if (callStateListener == null) {
+					callStateListener = new CallStateListener(BeeperApp.this);
+				}
+				TelephonyManager telManager = (TelephonyManager)getSystemService(Context.TELEPHONY_SERVICE);
+				telManager.listen(callStateListener, PhoneStateListener.LISTEN_CALL_STATE);
+				
+				preferenceListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+					@Override
+					public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+						// decode the beep sound again only if another one is selected
+						if (PreferenceHandler.KEY_BEEP_SOUND_ID.equals(key) && beepSoundPool != null) {
+							getBeepSoundPool();
+						}
+						// a plan left over from before the switch must not be taken up again
+						else if (PreferenceHandler.KEY_PLAN_BEEPS.equals(key)) {
+							long uptimeId = getPreferences().getUptimeId();
+							if (uptimeId != 0L) {
+								new ScheduledBeepTable(getApplicationContext()).removePlannedBeeps(uptimeId,
+										getPreferences().getScheduledBeepId());
+							}
+						}
+					}
+				};
+				getPreferences().registerOnPreferenceChangeListener(preferenceListener);
+			}
+		});
+		
+		startup.submit(STAGE_TIMER_PROFILE, new Runnable() {
+			@Override
+			public void run() {
+				setTimerProfile();
+			}
+		});
 		
-		//set export running to false
-		getPreferences().setExportRunningSince(0L);
+		startup.submit(STAGE_SCHEDULER_STATE, new Runnable() {
+			@Override
+			public void run() {
+				loadSchedulerState();
+			}
+		}, STAGE_TIMER_PROFILE);
 		
-		UptimeTable uptimeTbl = new UptimeTable(this.getApplicationContext(), timerProfile);
+		startup.submit(STAGE_PREFERENCES, new Runnable() {
+			@Override
+			public void run() {
+				// save thumbnail sizes
+				DisplayMetrics metrics = getResources().getDisplayMetrics();
+				int screenDpWidth = (int)(metrics.widthPixels / metrics.density + 0.5f);
+				int[] sizes = {48, 64, screenDpWidth};
+				getPreferences().setThumbnailSizes(sizes);
+				
+				//set export running to false
+				getPreferences().setExportRunningSince(0L);
+			}
+		});
 		
-		if (isBeeperActive()) {
-			long scheduledBeepId = getPreferences().getScheduledBeepId();
-			//is there a scheduled beep, if no, create one, if yes and it is expired, create a new one
-			if (scheduledBeepId != 0L) {
-				ScheduledBeepTable sbt = new ScheduledBeepTable(this.getApplicationContext());
-				if (sbt.getStatus(scheduledBeepId) != 3 && sbt.isExpired(scheduledBeepId)) {
-					expireTimer();
-					setTimer();
+		startup.submit(STAGE_BEEP_SOUND, new Runnable() {
+			@Override
+			public void run() {
+				if (isBeeperActive()) {
+					getBeepSoundPool();
 				}
 			}
-			else {
-				setTimer();
+		});
+		
+		startup.submit(STAGE_BEEPER, new Runnable() {
+			@Override
+			public void run() {
+				restoreBeeperState();
 			}
-			
-			//is there a notification, if no, create one
-			//cannot check if there is a notification or not, so call create, it will be replaced
-			createNotification();
-			
+		}, STAGE_SCHEDULER_STATE);
+		
+		startup.finish();
+	}
+	
+	// brings timer, notification and uptime in line with the stored beeper state
+	private void restoreBeeperState() {
+		if (isBeeperActive()) {
 			//is there a open uptime interval, if no, create one
+			//the uptime has to exist before a beep can be scheduled for it
 			long uptimeId = getPreferences().getUptimeId();
 			if (uptimeId == 0L) {
-				getPreferences().setUptimeId(uptimeTbl.startUptime(Calendar.getInstance().getTime()));
+				startUptime();
 			}
+			
+			renewTimer();
+			
+			//is there a notification, if no, create one
+			//cannot check if there is a notification or not, so call create, it will be replaced
+			createNotification();
 		}
 		else {
 			long scheduledBeepId = getPreferences().getScheduledBeepId();
@@ -210,45 +441,172 @@ public class BeeperApp extends Application { //implements SharedPreferences.OnSh
 			long uptimeId = getPreferences().getUptimeId();
 			
 			if (uptimeId != 0L) {
-				uptimeTbl.endUptime(uptimeId, Calendar.getInstance().getTime());
-				getPreferences().setUptimeId(0L);
+				endUptime(uptimeId);
 			}
 		}
 	}
 	
+	/**
+	 * Makes sure in the background that the scheduled beep did not expire due to an error,
+	 * once the beeper state has been restored at startup.
+	 */
+	public void checkTimer() {
+		getWriteExecutor().execute(new Runnable() {
+			@Override
+			public void run() {
+				if (startup != null) {
+					startup.await(STAGE_BEEPER);
+				}
+				if (isBeeperActive()) {
+					renewTimer();
+				}
+			}
+		});
+	}
+	
+	//is there a scheduled beep, if no, create one, if yes and it is expired, create a new one
+	private synchronized void renewTimer() {
+		long scheduledBeepId = getPreferences().getScheduledBeepId();
+		if (scheduledBeepId != 0L) {
+			ScheduledBeepTable sbt = new ScheduledBeepTable(this.getApplicationContext());
+			if (sbt.getStatus(scheduledBeepId) != 3 && sbt.isExpired(scheduledBeepId)) {
+				expireTimer();
+				setTimer();
+			}
+		}
+		else {
+			setTimer();
+		}
+	}
+	
+	@Override
+	public void onTrimMemory(int level) {
+		super.onTrimMemory(level);
+		
+		// pooled bitmaps are only kept for the next photo being scaled
+		if (bitmapPool != null && level >= TRIM_MEMORY_BACKGROUND) {
+			bitmapPool.clear();
+		}
+		
+		if (thumbnailCache != null) {
+			if (level >= TRIM_MEMORY_MODERATE) {
+				thumbnailCache.evictAll();
+			}
+			else if (level >= TRIM_MEMORY_BACKGROUND) {
+				thumbnailCache.trimToSize(thumbnailCache.maxSize() / 2);
+			}
+		}
+	}
+	
+	/**
+	 * Blocks until the background part of the application startup is complete.
+	 */
+	public void awaitStartup() {
+		if (startup != null) {
+			startup.awaitAll();
+		}
+	}
+	
 	public void setTimerProfile() {
 		//long profileId = preferences.getTimerProfileId();
         long profileId = 1;
 		timerProfile = new TimerProfileTable(this.getApplicationContext()).getTimerProfile(profileId);
+		if (timerProfile != null) {
+			timerProfile.setRandomStateStore(new RandomStateStore(
+					new File(getFilesDir(), "random_" + profileId + ".state")));
+		}
 	}
 	
 	public TimerProfile getTimerProfile() {
+		if (startup != null) {
+			startup.await(STAGE_TIMER_PROFILE);
+		}
+		
 		return timerProfile;
 	}
 	
-	public void setTimer() {
+	// timer methods are synchronized, so the startup and the UI cannot schedule two beeps at once
+	public synchronized void setTimer() {
 		if (isBeeperActive()) {
 			Calendar alarmTime = Calendar.getInstance();
 			Calendar alarmTimeUTC = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
 			
-			if (timerProfile == null) {
+			if (getTimerProfile() == null) {
 				setTimerProfile();
 			}
 			
-			long timer = timerProfile.getTimer(this.getApplicationContext());
-	        alarmTime.add(Calendar.SECOND, (int)timer);
-	        //Log.i(TAG, "alarm in " + timer + " seconds.");
-	        alarmTimeUTC.add(Calendar.SECOND, (int)timer);
-	        getPreferences().setScheduledBeepId(new ScheduledBeepTable(
-	        		this.getApplicationContext()).addScheduledBeep(alarmTime.getTimeInMillis(),
-	        		getPreferences().getUptimeId()));
+			long beepId;
+			if (getPreferences().isPlanBeeps()) {
+				long beepTime = getNextPlannedBeep();
+				beepId = getPreferences().getScheduledBeepId();
+				alarmTime.setTimeInMillis(beepTime);
+				alarmTimeUTC.setTimeInMillis(beepTime);
+			}
+			else {
+				long timer = timerProfile.getTimer(getSchedulerState());
+		        alarmTime.add(Calendar.SECOND, (int)timer);
+		        //Log.i(TAG, "alarm in " + timer + " seconds.");
+		        alarmTimeUTC.add(Calendar.SECOND, (int)timer);
+		        beepId = new ScheduledBeepTable(this.getApplicationContext()).addScheduledBeep(
+		        		alarmTime.getTimeInMillis(), getPreferences().getUptimeId());
+		        getPreferences().setScheduledBeepId(beepId);
+			}
+			timerProfile.saveRandomState();
+			
+			// the receiver ignores alarms without a beep, e.g. if there is no uptime yet
+			if (beepId == 0L) {
+				Log.w(TAG, "no beep could be scheduled, alarm not set");
+				return;
+			}
+	        getSchedulerState().beepScheduled(alarmTime.getTimeInMillis());
 	        
-	        Intent intent = new Intent(this, BeepActivity.class);
-	        PendingIntent alarmIntent = PendingIntent.getActivity(this, ALARM_INTENT_ID, intent,
+	        Intent intent = new Intent(this, BeepAlarmReceiver.class);
+	        intent.putExtra(BeepAlarmReceiver.EXTRA_BEEP_ID, beepId);
+	        PendingIntent alarmIntent = PendingIntent.getBroadcast(this, ALARM_INTENT_ID, intent,
 	        		PendingIntent.FLAG_CANCEL_CURRENT);
 	        AlarmManager manager = (AlarmManager)getSystemService(Activity.ALARM_SERVICE);
-	        manager.set(AlarmManager.RTC_WAKEUP, alarmTimeUTC.getTimeInMillis(), alarmIntent);
+	        // since KitKat set() may deliver the alarm minutes late, which the receiver treats as expired
+	        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+	        	manager.setExact(AlarmManager.RTC_WAKEUP, alarmTimeUTC.getTimeInMillis(), alarmIntent);
+	        }
+	        else {
+	        	manager.set(AlarmManager.RTC_WAKEUP, alarmTimeUTC.getTimeInMillis(), alarmIntent);
+	        }
+		}
+	}
+	
+	// takes the next beep from today's plan and makes it the scheduled beep, plans the rest of the day if needed,
+	// returns 0 if there is no uptime the plan could belong to
+	private long getNextPlannedBeep() {
+		ScheduledBeepTable sbt = new ScheduledBeepTable(this.getApplicationContext());
+		long uptimeId = getPreferences().getUptimeId();
+		long now = System.currentTimeMillis();
+		
+		if (uptimeId == 0L) {
+			getPreferences().setScheduledBeepId(0L);
+			return 0L;
+		}
+		
+		// beeps that were due while the previous one was pending are not made up for
+		int expired = sbt.expirePlannedBeeps(uptimeId, now);
+		for (int i = 0; i < expired; i++) {
+			getSchedulerState().beepScheduled(now);
+			getSchedulerState().beepUpdated(2);
+		}
+		
+		long beepId = sbt.getNextPlannedBeep(uptimeId);
+		long beepTime;
+		if (beepId != 0L) {
+			beepTime = sbt.getTimestamp(beepId);
 		}
+		else {
+			List<Long> plan = timerProfile.getPlan(getSchedulerState(), now);
+			beepId = sbt.addScheduledBeeps(plan, uptimeId)[0];
+			beepTime = plan.get(0).longValue();
+		}
+		getPreferences().setScheduledBeepId(beepId);
+		
+		return beepTime;
 	}
 	
 	public void declineTimer() {
@@ -259,7 +617,7 @@ public class BeeperApp extends Application { //implements SharedPreferences.OnSh
 		updateTimer(3);
 	}
 	
-	public void expireTimer() {
+	public synchronized void expireTimer() {
 		updateTimer(2);
 	}
 	
@@ -267,19 +625,39 @@ public class BeeperApp extends Application { //implements SharedPreferences.OnSh
 		updateTimer(1);
 	}
 	
-	public void updateTimer(int status) {
+	public synchronized void updateTimer(int status) {
 		if (status != 3 || status != 4) {
-			Intent intent = new Intent(this, BeepActivity.class);
-	        PendingIntent alarmIntent = PendingIntent.getActivity(this, ALARM_INTENT_ID, intent,
+			Intent intent = new Intent(this, BeepAlarmReceiver.class);
+	        PendingIntent alarmIntent = PendingIntent.getBroadcast(this, ALARM_INTENT_ID, intent,
 	        		PendingIntent.FLAG_CANCEL_CURRENT);
 			alarmIntent.cancel();
+			
+			// alarms armed by versions that started BeepActivity directly
+			PendingIntent oldAlarmIntent = PendingIntent.getActivity(this, ALARM_INTENT_ID,
+					new Intent(this, BeepActivity.class), PendingIntent.FLAG_NO_CREATE);
+			if (oldAlarmIntent != null) {
+				oldAlarmIntent.cancel();
+			}
+		}
+		if (new ScheduledBeepTable(this.getApplicationContext()).updateStatus(getPreferences().getScheduledBeepId(), status)) {
+			getSchedulerState().beepUpdated(status);
 		}
-		new ScheduledBeepTable(this.getApplicationContext()).updateStatus(getPreferences().getScheduledBeepId(), status);
 		if (status != 3) {
 			getPreferences().setScheduledBeepId(0L);
 		}
 	}
 	
+	// records a declined sample for the beep and schedules the next one
+	public void declineBeep(long beepTimestamp) {
+		Sample sample = new Sample();
+		sample.setTimestamp(new Date(beepTimestamp));
+		sample.setAccepted(false);
+		sample.setUptimeId(getPreferences().getUptimeId());
+		new SampleTable(this.getApplicationContext()).addSample(sample);
+		declineTimer();
+		setTimer();
+	}
+	
 	public void beep() {
 		if (isBeeperActive()) {
 			Intent beep = new Intent(BeeperApp.this, BeepActivity.class);
@@ -326,6 +704,7 @@ public class BeeperApp extends Application { //implements SharedPreferences.OnSh
 
                             // rename the database
                             if (!dbName.equals(StorageHandler.DB_OLD_NAME)) {
+                                StorageHandler.closeConnections();
                                 File oldDb = getDatabasePath(StorageHandler.DB_OLD_NAME);
                                 File newDb = new File(oldDb.getParentFile(), dbName);
                                 oldDb.renameTo(newDb);
@@ -369,7 +748,9 @@ public class BeeperApp extends Application { //implements SharedPreferences.OnSh
                 }
             } // else we would have a new install or the data had been deleted
 
-            getPreferences().setAppVersion(newVersion);
+            if (oldVersion != newVersion) {
+                getPreferences().setAppVersion(newVersion);
+            }
         }
         catch(PackageManager.NameNotFoundException nnfe) {}
     }
@@ -24,8 +24,9 @@ import java.util.Date;
 import java.util.List;
 import java.text.DateFormat;
 
+import com.glanznig.beepme.data.DayStatistics;
+
 import android.content.Context;
-import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -33,12 +34,12 @@ import android.widget.ArrayAdapter;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
-public class HistoryListAdapter extends ArrayAdapter<Bundle> {
+public class HistoryListAdapter extends ArrayAdapter<DayStatistics> {
 	
 	private static final String TAG = "HistoryListAdapter";
 	
 	private final Context context;
-	private final List<Bundle> history;
+	private final List<DayStatistics> history;
 	
 	static class EntryHolder {
 	    public TextView day;
@@ -47,7 +48,7 @@ public class HistoryListAdapter extends ArrayAdapter<Bundle> {
 	    public TextView elapsed;
 	}
 	
-	public HistoryListAdapter(Context context, List<Bundle> values) {
+	public HistoryListAdapter(Context context, List<DayStatistics> values) {
 	    super(context, R.layout.list_history_row, values);
 	    this.context = context;
 	    this.history = values;
@@ -80,37 +81,29 @@ public class HistoryListAdapter extends ArrayAdapter<Bundle> {
 		}
 		
 		EntryHolder holder = (EntryHolder)rowView.getTag();
-		Bundle item = history.get(position);
+		DayStatistics item = history.get(position);
 		
-		if (item.containsKey("timestamp")) {
-			holder.day.setText(dateFormat.format(new Date(item.getLong("timestamp"))));
-		}
+		holder.day.setText(dateFormat.format(new Date(item.getTimestamp())));
 		
-		if (item.containsKey("acceptedSamples")) {
-			String acceptedText = "";
-			int accepted = item.getInt("acceptedSamples");
-			if (accepted < 10) {
-				acceptedText += " ";
-			}
-			acceptedText += String.valueOf(accepted);
-			holder.accepted.setText(acceptedText);
+		String acceptedText = "";
+		int accepted = item.getAccepted();
+		if (accepted < 10) {
+			acceptedText += " ";
 		}
+		acceptedText += String.valueOf(accepted);
+		holder.accepted.setText(acceptedText);
 		
-		if (item.containsKey("declinedSamples")) {
-			String declinedText = "";
-			int declined = item.getInt("declinedSamples");
-			if (declined < 10) {
-				declinedText += " ";
-			}
-			declinedText += String.valueOf(declined);
-			holder.declined.setText(declinedText);
+		String declinedText = "";
+		int declined = item.getDeclined();
+		if (declined < 10) {
+			declinedText += " ";
 		}
+		declinedText += String.valueOf(declined);
+		holder.declined.setText(declinedText);
 		
-		if (item.containsKey("uptimeDuration")) {
-			long uptimeDur = item.getLong("uptimeDuration") / 1000;
-			String timeActive = String.format("%02d:%02d:%02d", uptimeDur/3600, (uptimeDur%3600)/60, (uptimeDur%60));
-			holder.elapsed.setText(timeActive);
-		}
+		long uptimeDur = item.getUptimeDuration() / 1000;
+		String timeActive = String.format("%02d:%02d:%02d", uptimeDur/3600, (uptimeDur%3600)/60, (uptimeDur%60));
+		holder.elapsed.setText(timeActive);
 		
 		return rowView;
 	}
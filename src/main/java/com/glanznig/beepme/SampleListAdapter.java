@@ -21,13 +21,14 @@ http://beepme.yourexp.at
 package com.glanznig.beepme;
 
 import java.util.Date;
-import java.util.List;
 import java.io.File;
 import java.lang.ref.WeakReference;
 import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 
+import com.glanznig.beepme.helper.LocalDay;
+import com.glanznig.beepme.helper.PhotoLoader;
 import com.glanznig.beepme.helper.PhotoUtils;
+import com.glanznig.beepme.helper.ThumbnailCache;
 import com.glanznig.beepme.view.SamplePhotoView;
 
 import android.content.Context;
@@ -38,14 +39,19 @@ import android.os.Message;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
+import android.widget.BaseAdapter;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
-public class SampleListAdapter extends ArrayAdapter<ListItem> {
+public class SampleListAdapter extends BaseAdapter {
+	
+	private static final int TYPE_HEADER = 0;
+	private static final int TYPE_ENTRY = 1;
 	
 	private final Context context;
-	private final List<ListItem> samples;
+	private final SampleListSource samples;
+	private final ThumbnailCache thumbnails;
+	private final PhotoLoader photoLoader;
 	
 	static class EntryHolder {
 	    public TextView title;
@@ -74,28 +80,68 @@ public class SampleListAdapter extends ArrayAdapter<ListItem> {
 	    		Bundle data = msg.getData();
 	    		String uri = data.getString("uri");
 	    		
+	    		// the bitmap is owned by the thumbnail cache and must not be recycled here
 	    		if (view.get() != null && imageBitmap != null && uri != null && this.uri != null) {
 	    			if (this.uri.equals(uri)) {
 	    				view.get().setPhoto(imageBitmap);
 	    			}
-	    			else {
-	    				imageBitmap.recycle();
-	    			}
 	    		}
 	    	}
 	    }
 	}
 	
-	public SampleListAdapter(Context context, List<ListItem> values) {
-	    super(context, R.layout.list_sample_row, values);
+	public SampleListAdapter(Context context, SampleListSource source) {
 	    this.context = context;
-	    this.samples = values;
+	    this.samples = source;
+	    // rows of a page are empty until it is loaded
+	    source.setOnPageLoadedListener(new SampleListSource.OnPageLoadedListener() {
+	    	@Override
+	    	public void onPageLoaded() {
+	    		notifyDataSetChanged();
+	    	}
+	    });
+	    BeeperApp app = (BeeperApp)context.getApplicationContext();
+	    this.thumbnails = app.getThumbnailCache();
+	    this.photoLoader = app.getPhotoLoader();
+	}
+	
+	@Override
+	public int getCount() {
+		return samples.getCount();
+	}
+	
+	@Override
+	public ListItem getItem(int position) {
+		return samples.getItem(position);
+	}
+	
+	@Override
+	public long getItemId(int position) {
+		return position;
+	}
+	
+	@Override
+	public int getViewTypeCount() {
+		return 2;
+	}
+	
+	@Override
+	public int getItemViewType(int position) {
+		if (samples.isSectionHeader(position)) {
+			return TYPE_HEADER;
+		}
+		
+		return TYPE_ENTRY;
+	}
+	
+	@Override
+	public boolean areAllItemsEnabled() {
+		return false;
 	}
 	
 	@Override
 	public boolean isEnabled(int position) {
-		ListItem item = samples.get(position);
-		return !item.isSectionHeader();
+		return !samples.isSectionHeader(position);
 	}
 	
 	@Override
@@ -104,7 +150,7 @@ public class SampleListAdapter extends ArrayAdapter<ListItem> {
 		LayoutInflater inflater = (LayoutInflater)context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
 		DateFormat timeFormat = DateFormat.getTimeInstance(DateFormat.SHORT); 
 		DateFormat dateFormat = DateFormat.getDateInstance(DateFormat.SHORT);
-		ListItem item = samples.get(position);
+		ListItem item = samples.getItem(position);
 		
 		if (item.isSectionHeader()) {
 			//performance optimization: reuse already inflated views
@@ -121,11 +167,10 @@ public class SampleListAdapter extends ArrayAdapter<ListItem> {
 			
 			HeaderHolder holder = (HeaderHolder)rowView.getTag();
 			
-			if (((DateListSectionHeader)samples.get(position)).getDate() != null) {
-				Date viewDate = ((DateListSectionHeader)samples.get(position)).getDate();
+			if (((DateListSectionHeader)item).getDate() != null) {
+				Date viewDate = ((DateListSectionHeader)item).getDate();
 				String content = "";
-				SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd");
-				if (format.format(new Date()).equals(format.format(viewDate))) {
+				if (LocalDay.of(viewDate.getTime()) == LocalDay.today()) {
 					content = context.getString(R.string.today) + " "; 
 				}
 				content += dateFormat.format(viewDate);
@@ -150,7 +195,7 @@ public class SampleListAdapter extends ArrayAdapter<ListItem> {
 			}
 			
 			EntryHolder holder = (EntryHolder)rowView.getTag();
-			SampleListEntry entry = (SampleListEntry)samples.get(position);
+			SampleListEntry entry = (SampleListEntry)item;
 			
 			if (entry.getTitle() != null && entry.getTitle().length() > 0) {
 				String entryTitle = entry.getTitle();
@@ -162,18 +207,29 @@ public class SampleListAdapter extends ArrayAdapter<ListItem> {
 			
 			if (entry.getPhoto() != null && entry.getPhoto().length() > 0) {
 				String thumbnailUri = PhotoUtils.getThumbnailUri(entry.getPhoto(), 64);
+				Bitmap cached = thumbnails.get(thumbnailUri);
 				File thumb = new File(thumbnailUri);
-				if (thumb.exists()) {
+				if (cached != null) {
+					photoLoader.cancel(holder.photo);
+					holder.photo.setPhoto(cached);
+				}
+				else if (thumb.exists()) {
+					// do not show the photo of the row this view was used for before
+					holder.photo.unsetPhoto();
+					holder.photo.measure(0, 0);
+					int size = holder.photo.getMeasuredWidth();
 					ImgLoadHandler handler = new ImgLoadHandler(holder.photo, thumbnailUri);
-					PhotoUtils.getAsyncBitmap(this.getContext(), thumbnailUri, handler);
+					photoLoader.load(holder.photo, thumbnailUri, size, size, PhotoLoader.PRIORITY_NORMAL, handler);
 				}
 				else {
+					photoLoader.cancel(holder.photo);
 					holder.photo.unsetPhoto();
 					holder.photo.measure(0, 0);
 					PhotoUtils.generateThumbnail(context, entry.getPhoto(), 64, holder.photo.getMeasuredWidth(), null);
 				}
 			}
 			else {
+				photoLoader.cancel(holder.photo);
 				holder.photo.unsetPhoto();
 			}
 			
@@ -186,7 +242,12 @@ public class SampleListAdapter extends ArrayAdapter<ListItem> {
 				holder.description.setVisibility(View.GONE);
 			}
 				
-			holder.timestamp.setText(timeFormat.format(entry.getTimestamp()));
+			if (entry.getTimestamp() != null) {
+				holder.timestamp.setText(timeFormat.format(entry.getTimestamp()));
+			}
+			else {
+				holder.timestamp.setText("");
+			}
 		}
 		
 		return rowView;
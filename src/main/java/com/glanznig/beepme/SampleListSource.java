@@ -0,0 +1,228 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.glanznig.beepme.data.DayStatistics;
+import com.glanznig.beepme.data.Sample;
+import com.glanznig.beepme.db.SampleTable;
+import com.glanznig.beepme.helper.LocalDay;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+/**
+ * Windowed data source for the sample list. Only the number of accepted samples per day is
+ * loaded up front, the samples themselves are loaded in pages on a background thread when
+ * they become visible, together with the pages before and after them. Only a few pages are
+ * kept in memory. Section headers are created on demand.
+ */
+public class SampleListSource {
+	
+	private static final String TAG = "SampleListSource";
+	
+	private static final int PAGE_SIZE = 40;
+	private static final int MAX_PAGES = 5;
+	
+	public interface OnPageLoadedListener {
+		// called on the main thread
+		public void onPageLoaded();
+	}
+	
+	private final SampleTable sampleTable;
+	
+	// per section (day): local day, list position of the header and index of its first sample
+	private final long[] days;
+	private final int[] headerPositions;
+	private final int[] firstSamples;
+	private final int count;
+	private final int numPages;
+	
+	private final LruCache<Integer, List<Sample>> pages;
+	// timestamp and id of the last sample before each page, only known once the page before was
+	// loaded, otherwise a page is located from the start of its day; only used by the loader thread
+	private final long[] pageKeyTimestamps;
+	private final long[] pageKeyIds;
+	private final boolean[] pageKeyKnown;
+	
+	private final HashSet<Integer> loading = new HashSet<Integer>();
+	private final ThreadPoolExecutor loader;
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+	private OnPageLoadedListener listener = null;
+	
+	public SampleListSource(Context ctx) {
+		sampleTable = new SampleTable(ctx.getApplicationContext());
+		pages = new LruCache<Integer, List<Sample>>(MAX_PAGES);
+		
+		List<DayStatistics> dayCounts = sampleTable.getAcceptedSamplesPerDay();
+		days = new long[dayCounts.size()];
+		headerPositions = new int[dayCounts.size()];
+		firstSamples = new int[dayCounts.size()];
+		
+		int position = 0;
+		int sample = 0;
+		for (int i = 0; i < dayCounts.size(); i++) {
+			DayStatistics day = dayCounts.get(i);
+			days[i] = day.getDay();
+			headerPositions[i] = position;
+			firstSamples[i] = sample;
+			position += 1 + day.getAccepted();
+			sample += day.getAccepted();
+		}
+		count = position;
+		
+		numPages = (sample + PAGE_SIZE - 1) / PAGE_SIZE;
+		pageKeyTimestamps = new long[numPages];
+		pageKeyIds = new long[numPages];
+		pageKeyKnown = new boolean[numPages];
+		
+		// pages are loaded one after another, the page that is visible first
+		loader = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, TAG);
+				t.setPriority(Thread.NORM_PRIORITY - 1);
+				return t;
+			}
+		});
+		loader.allowCoreThreadTimeOut(true);
+		
+		requestPage(0);
+	}
+	
+	public void setOnPageLoadedListener(OnPageLoadedListener listener) {
+		this.listener = listener;
+	}
+	
+	public int getCount() {
+		return count;
+	}
+	
+	public ListItem getItem(int position) {
+		if (position < 0 || position >= count) {
+			return null;
+		}
+		
+		int section = Arrays.binarySearch(headerPositions, position);
+		if (section >= 0) {
+			return new DateListSectionHeader(new Date(LocalDay.startOf(days[section])));
+		}
+		
+		// position lies after the header of the preceding section
+		section = -section - 2;
+		// entry is empty while its page is loading or if the sample was removed after the list was loaded
+		return new SampleListEntry(getSample(firstSamples[section] + position - headerPositions[section] - 1));
+	}
+	
+	public boolean isSectionHeader(int position) {
+		return Arrays.binarySearch(headerPositions, position) >= 0;
+	}
+	
+	private Sample getSample(int index) {
+		int page = index / PAGE_SIZE;
+		List<Sample> samples = pages.get(Integer.valueOf(page));
+		if (samples == null) {
+			requestPage(page);
+		}
+		// load ahead in both scrolling directions
+		requestPage(page + 1);
+		requestPage(page - 1);
+		
+		int offset = index % PAGE_SIZE;
+		if (samples != null && offset < samples.size()) {
+			return samples.get(offset);
+		}
+		
+		return null;
+	}
+	
+	private void requestPage(final int page) {
+		if (page < 0 || page >= numPages || pages.get(Integer.valueOf(page)) != null) {
+			return;
+		}
+		synchronized (loading) {
+			if (!loading.add(Integer.valueOf(page))) {
+				return;
+			}
+		}
+		
+		loader.execute(new Runnable() {
+			@Override
+			public void run() {
+				List<Sample> samples = loadPage(page);
+				pages.put(Integer.valueOf(page), samples);
+				synchronized (loading) {
+					loading.remove(Integer.valueOf(page));
+				}
+				
+				mainHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						if (listener != null) {
+							listener.onPageLoaded();
+						}
+					}
+				});
+			}
+		});
+	}
+	
+	// keyset paging, the query does not get slower the further the list is scrolled
+	private List<Sample> loadPage(int page) {
+		List<Sample> samples;
+		if (page == 0) {
+			samples = sampleTable.getAcceptedSamplesBefore(Long.MAX_VALUE, Long.MAX_VALUE, 0, PAGE_SIZE);
+		}
+		else if (pageKeyKnown[page]) {
+			samples = sampleTable.getAcceptedSamplesBefore(pageKeyTimestamps[page], pageKeyIds[page], 0, PAGE_SIZE);
+		}
+		else {
+			// e.g. when the list position is restored, start from the day of the first sample
+			int index = page * PAGE_SIZE;
+			int section = Arrays.binarySearch(firstSamples, index);
+			if (section < 0) {
+				section = -section - 2;
+			}
+			samples = sampleTable.getAcceptedSamplesBefore(LocalDay.startOf(days[section] + 1), 0L,
+					index - firstSamples[section], PAGE_SIZE);
+		}
+		
+		if (page + 1 < numPages && samples.size() == PAGE_SIZE) {
+			Sample last = samples.get(PAGE_SIZE - 1);
+			pageKeyTimestamps[page + 1] = last.getTimestamp().getTime();
+			pageKeyIds[page + 1] = last.getId();
+			pageKeyKnown[page + 1] = true;
+		}
+		
+		return samples;
+	}
+}
@@ -20,9 +20,10 @@ http://beepme.yourexp.at
 
 package com.glanznig.beepme;
 
-import java.util.ArrayList;
+import java.util.List;
 
 import com.glanznig.beepme.data.Tag;
+import com.glanznig.beepme.db.TagIndex;
 import com.glanznig.beepme.db.TagTable;
 
 import android.content.Context;
@@ -38,7 +39,7 @@ public class TagAutocompleteAdapter extends ArrayAdapter<String> implements Filt
 	
 	private static final String TAG = "TagAutocompleteAdapter";
 	
-	private ArrayList<Tag> resultList;
+	private List<Tag> resultList;
 	private Context ctx;
 	private int resourceId;
 	private long vocabularyId;
@@ -52,6 +53,8 @@ public class TagAutocompleteAdapter extends ArrayAdapter<String> implements Filt
         ctx = context;
         resourceId = textViewResourceId;
         this.vocabularyId = vocabularyId;
+        // start loading the suggestions before the first keystroke
+        TagIndex.get(context, vocabularyId);
     }
     
     @Override
@@ -94,9 +97,11 @@ public class TagAutocompleteAdapter extends ArrayAdapter<String> implements Filt
             protected FilterResults performFiltering(CharSequence constraint) {
                 FilterResults filterResults = new FilterResults();
                 if (constraint != null) {
-                    // Retrieve the auto-complete results.
-            		ArrayList<Tag> results = (ArrayList<Tag>)new TagTable(ctx.getApplicationContext())
-            						.getTags(vocabularyId, constraint.toString());
+                    // Retrieve the auto-complete results, from the database only if the index is not loaded yet
+                    List<Tag> results = TagIndex.get(ctx, vocabularyId).getTags(constraint.toString());
+                    if (results == null) {
+                        results = new TagTable(ctx.getApplicationContext()).getTags(vocabularyId, constraint.toString());
+                    }
                     
                     // Assign the data to the FilterResults
                     filterResults.values = results;
@@ -108,8 +113,8 @@ public class TagAutocompleteAdapter extends ArrayAdapter<String> implements Filt
             @Override
             protected void publishResults(CharSequence constraint, FilterResults results) {
                 if (results != null && results.count > 0) {
-                	if (results.values instanceof ArrayList) {
-                		resultList = (ArrayList<Tag>)results.values;
+                	if (results.values instanceof List) {
+                		resultList = (List<Tag>)results.values;
                 		notifyDataSetChanged();
                 	}
                 }
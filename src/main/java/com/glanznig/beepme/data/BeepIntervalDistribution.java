@@ -0,0 +1,37 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme.data;
+
+import com.glanznig.beepme.helper.MersenneTwister;
+
+/**
+ * Shape of the random time between two beeps. The bounds are computed by the TimerProfile
+ * (and adapted to today's uptimes), a distribution only decides how intervals are spread
+ * between min and max around avg. All values are in seconds, min < avg < max.
+ */
+public interface BeepIntervalDistribution {
+	
+	public long next(MersenneTwister random, long min, long avg, long max);
+	
+	// fills the array with consecutive intervals, the bounds are only checked once
+	public void fill(MersenneTwister random, long min, long avg, long max, long[] intervals);
+	
+}
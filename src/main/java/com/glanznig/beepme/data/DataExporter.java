@@ -33,6 +33,7 @@ import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Iterator;
@@ -44,6 +45,7 @@ import java.util.zip.ZipOutputStream;
 import com.glanznig.beepme.BeeperApp;
 import com.glanznig.beepme.R;
 import com.glanznig.beepme.db.SampleTable;
+import com.glanznig.beepme.db.ScheduledBeepTable;
 import com.glanznig.beepme.db.StorageHandler;
 import com.glanznig.beepme.helper.AsyncImageScaler;
 import com.glanznig.beepme.helper.PhotoUtils;
@@ -80,7 +82,7 @@ public class DataExporter {
 
     private File writeDataCSV(File tempDir) {
         SampleTable st = new SampleTable(ctx.getApplicationContext());
-        List<Sample> sampleList = st.getSamples();
+        List<Sample> sampleList = st.getSamplesWithTags();
         SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.ENGLISH);
 
         File csvFile = new File(tempDir, "data.csv");
@@ -114,7 +116,7 @@ public class DataExporter {
                     list.add("");
                 }
 
-                List<Tag> tags = st.getTagsOfSample(item.getId());
+                List<Tag> tags = item.getTags();
                 if (tags!= null && tags.size() > 0) {
                     Iterator<Tag> it = tags.iterator();
                     String tagString = it.next().getName();
@@ -146,7 +148,7 @@ public class DataExporter {
 
     private File writeHistoryCSV(File tempDir) {
         BeeperApp app = (BeeperApp)ctx.getApplicationContext();
-        List<Bundle> statList = Statistics.getStats(ctx, app.getTimerProfile());
+        List<DayStatistics> statList = Statistics.getStats(ctx, app.getTimerProfile());
         SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.ENGLISH);
 
         File csvFile = new File(tempDir, "history.csv");
@@ -155,32 +157,17 @@ public class DataExporter {
             CSVWriter writer = new CSVWriter(new FileWriter(csvFile), ';');
             writer.writeNext("Date#Accepted#Declined#Elapsed".split("#"));
 
-            Iterator<Bundle> i = statList.iterator();
+            Iterator<DayStatistics> i = statList.iterator();
             while (i.hasNext()) {
-                Bundle item = i.next();
+                DayStatistics item = i.next();
                 ArrayList<String> list = new ArrayList<String>();
-                list.add(dateFormat.format(new Date(item.getLong("timestamp"))));
+                list.add(dateFormat.format(new Date(item.getTimestamp())));
+                list.add(String.valueOf(item.getAccepted()));
+                list.add(String.valueOf(item.getDeclined()));
 
-                if (item.containsKey("acceptedSamples")) {
-                    list.add(String.valueOf(item.getInt("acceptedSamples", 0)));
-                }
-                else {
-                    list.add("0");
-                }
-                if (item.containsKey("declinedSamples")) {
-                    list.add(String.valueOf(item.getInt("declinedSamples", 0)));
-                }
-                else {
-                    list.add("0");
-                }
-                if (item.containsKey("uptimeDuration")) {
-                    long uptimeDur = item.getLong("uptimeDuration") / 1000;
-                    String timeActive = String.format("%02d:%02d:%02d", uptimeDur/3600, (uptimeDur%3600)/60, (uptimeDur%60));
-                    list.add(timeActive);
-                }
-                else {
-                    list.add("00:00:00");
-                }
+                long uptimeDur = item.getUptimeDuration() / 1000;
+                String timeActive = String.format("%02d:%02d:%02d", uptimeDur/3600, (uptimeDur%3600)/60, (uptimeDur%60));
+                list.add(timeActive);
 
                 String[] listArray = new String[list.size()];
                 listArray = list.toArray(listArray);
@@ -197,6 +184,59 @@ public class DataExporter {
         return csvFile;
     }
 
+    private File writeLatencyCSV(File tempDir) {
+        List<LatencyStatistics> statList = new ScheduledBeepTable(ctx).getLatencyStatistics();
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.ENGLISH);
+        long[] bounds = LatencyStatistics.getBucketBounds();
+
+        File csvFile = new File(tempDir, "latency.csv");
+
+        try {
+            CSVWriter writer = new CSVWriter(new FileWriter(csvFile), ';');
+            ArrayList<String> header = new ArrayList<String>();
+            header.addAll(Arrays.asList("Date#Measure#Count#P50#P90#P95#P99#Max".split("#")));
+            for (int b = 0; b < bounds.length; b++) {
+                header.add("<=" + bounds[b] + "ms");
+            }
+            header.add(">" + bounds[bounds.length - 1] + "ms");
+            writer.writeNext(header.toArray(new String[header.size()]));
+
+            Iterator<LatencyStatistics> i = statList.iterator();
+            while (i.hasNext()) {
+                LatencyStatistics item = i.next();
+                for (int measure = LatencyStatistics.DELIVERY; measure <= LatencyStatistics.REACTION; measure++) {
+                    if (item.getCount(measure) == 0) {
+                        continue;
+                    }
+
+                    ArrayList<String> list = new ArrayList<String>();
+                    list.add(dateFormat.format(new Date(item.getTimestamp())));
+                    list.add(LatencyStatistics.MEASURE_NAMES[measure]);
+                    list.add(String.valueOf(item.getCount(measure)));
+                    list.add(String.valueOf(item.getPercentile(measure, 50)));
+                    list.add(String.valueOf(item.getPercentile(measure, 90)));
+                    list.add(String.valueOf(item.getPercentile(measure, 95)));
+                    list.add(String.valueOf(item.getPercentile(measure, 99)));
+                    list.add(String.valueOf(item.getMax(measure)));
+                    int[] histogram = item.getHistogram(measure);
+                    for (int b = 0; b < histogram.length; b++) {
+                        list.add(String.valueOf(histogram[b]));
+                    }
+
+                    writer.writeNext(list.toArray(new String[list.size()]));
+                }
+            }
+
+            writer.close();
+        }
+        catch(IOException ioe) {
+            Log.e(TAG, "error writing latency csv file.");
+            return null;
+        }
+
+        return csvFile;
+    }
+
     public String exportToZipFile(Bundle opts) {
         boolean exportPhotos = opts.getBoolean("photoExport", true);
         boolean exportRaw = opts.getBoolean("rawExport", false);
@@ -233,6 +273,8 @@ public class DataExporter {
             }
 
             if (exportRaw) {
+                // move pending changes from the write-ahead log into the database file
+                new StorageHandler(ctx).checkpoint();
                 fileList.add(ctx.getDatabasePath(dbName));
             }
 
@@ -242,12 +284,16 @@ public class DataExporter {
 
             File dataCSV = writeDataCSV(tempDir);
             File historyCSV = writeHistoryCSV(tempDir);
+            File latencyCSV = writeLatencyCSV(tempDir);
             if (dataCSV != null && dataCSV.exists()) {
                 fileList.add(dataCSV);
             }
             if (historyCSV != null && historyCSV.exists()) {
                 fileList.add(historyCSV);
             }
+            if (latencyCSV != null && latencyCSV.exists()) {
+                fileList.add(latencyCSV);
+            }
 
 			if (exportPhotos) {
                 if (picDir.exists()) {
@@ -278,7 +324,8 @@ public class DataExporter {
                                         (int)Math.round(height / Math.sqrt((double)densityFactor)));
 
                                 if (scaledPhoto != null) {
-                                    scaledPhoto.recycle();
+                                    // only written to the file, its memory can be used for the next photo
+                                    app.getBitmapPool().put(scaledPhoto);
                                     fileList.add(destPhoto);
                                 }
                             }
@@ -0,0 +1,80 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme.data;
+
+import com.glanznig.beepme.helper.LocalDay;
+
+public class DayStatistics {
+	
+	private long day;
+	private int accepted;
+	private int declined;
+	private long uptimeDuration;
+	
+	public DayStatistics(long day) {
+		this.day = day;
+		accepted = 0;
+		declined = 0;
+		uptimeDuration = 0L;
+	}
+	
+	public long getDay() {
+		return day;
+	}
+	
+	// start of the day in milliseconds
+	public long getTimestamp() {
+		return LocalDay.startOf(day);
+	}
+	
+	public int getAccepted() {
+		return accepted;
+	}
+	
+	public void setAccepted(int accepted) {
+		this.accepted = accepted;
+	}
+	
+	public int getDeclined() {
+		return declined;
+	}
+	
+	public void setDeclined(int declined) {
+		this.declined = declined;
+	}
+	
+	public int getCount() {
+		return accepted + declined;
+	}
+	
+	// uptime in milliseconds
+	public long getUptimeDuration() {
+		return uptimeDuration;
+	}
+	
+	public void setUptimeDuration(long uptimeDuration) {
+		this.uptimeDuration = uptimeDuration;
+	}
+	
+	public void addUptimeDuration(long duration) {
+		this.uptimeDuration += duration;
+	}
+}
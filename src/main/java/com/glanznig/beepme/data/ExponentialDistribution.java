@@ -0,0 +1,57 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme.data;
+
+import com.glanznig.beepme.helper.MersenneTwister;
+
+/**
+ * Beeps as a Poisson process: exponentially distributed intervals, shifted by min and
+ * truncated at max. The rate is chosen so that the untruncated mean is avg. Truncation
+ * is done by inverting the truncated distribution function, so there are no retries.
+ */
+public class ExponentialDistribution implements BeepIntervalDistribution {
+	
+	public long next(MersenneTwister random, long min, long avg, long max) {
+		double scale = avg - min;
+		return draw(random.nextDouble(), min, scale, truncation(scale, max - min));
+	}
+	
+	public void fill(MersenneTwister random, long min, long avg, long max, long[] intervals) {
+		double scale = avg - min;
+		double truncation = truncation(scale, max - min);
+		double[] uniform = new double[intervals.length];
+		random.nextDoubles(uniform);
+		
+		for (int i = 0; i < intervals.length; i++) {
+			intervals[i] = draw(uniform[i], min, scale, truncation);
+		}
+	}
+	
+	// probability mass of the exponential distribution below max
+	private static double truncation(double scale, long range) {
+		return 1 - Math.exp(-range / scale);
+	}
+	
+	private static long draw(double u, long min, double scale, double truncation) {
+		return min + Math.round(-scale * Math.log(1 - u * truncation));
+	}
+	
+}
@@ -0,0 +1,113 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme.data;
+
+import java.util.Arrays;
+
+import com.glanznig.beepme.helper.LocalDay;
+
+/**
+ * Beep latencies of one local day, in milliseconds: how late the alarm was delivered
+ * (scheduled to received), how long it took until the beep screen was drawn (received to
+ * displayed) and how long the user took to accept or decline (displayed to reacted).
+ */
+public class LatencyStatistics {
+	
+	public static final int DELIVERY = 0;
+	public static final int DISPLAY = 1;
+	public static final int REACTION = 2;
+	public static final String[] MEASURE_NAMES = { "delivery", "display", "reaction" };
+	
+	// upper bounds of the histogram buckets, the last bucket takes everything above
+	private static final long[] BUCKET_BOUNDS = { 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 300000 };
+	
+	private long day;
+	private long[][] values = new long[3][];
+	private int[] counts = new int[3];
+	private boolean[] sorted = new boolean[3];
+	
+	public LatencyStatistics(long day) {
+		this.day = day;
+		for (int i = 0; i < values.length; i++) {
+			values[i] = new long[16];
+		}
+	}
+	
+	public long getDay() {
+		return day;
+	}
+	
+	// start of the day in milliseconds
+	public long getTimestamp() {
+		return LocalDay.startOf(day);
+	}
+	
+	public void add(int measure, long latency) {
+		if (counts[measure] == values[measure].length) {
+			values[measure] = Arrays.copyOf(values[measure], counts[measure] * 2);
+		}
+		values[measure][counts[measure]++] = latency;
+		sorted[measure] = false;
+	}
+	
+	public int getCount(int measure) {
+		return counts[measure];
+	}
+	
+	/**
+	 * Nearest-rank percentile (0 < percentile <= 100), -1 if there are no values.
+	 */
+	public long getPercentile(int measure, double percentile) {
+		int count = counts[measure];
+		if (count == 0) {
+			return -1;
+		}
+		
+		if (!sorted[measure]) {
+			Arrays.sort(values[measure], 0, count);
+			sorted[measure] = true;
+		}
+		int rank = (int)Math.ceil(percentile / 100 * count);
+		
+		return values[measure][Math.max(0, Math.min(count, rank) - 1)];
+	}
+	
+	public long getMax(int measure) {
+		return getPercentile(measure, 100);
+	}
+	
+	public int[] getHistogram(int measure) {
+		int[] histogram = new int[BUCKET_BOUNDS.length + 1];
+		for (int i = 0; i < counts[measure]; i++) {
+			int bucket = Arrays.binarySearch(BUCKET_BOUNDS, values[measure][i]);
+			if (bucket < 0) {
+				bucket = -bucket - 1;
+			}
+			histogram[bucket] += 1;
+		}
+		
+		return histogram;
+	}
+	
+	public static long[] getBucketBounds() {
+		return BUCKET_BOUNDS.clone();
+	}
+}
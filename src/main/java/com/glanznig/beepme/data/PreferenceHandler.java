@@ -42,6 +42,7 @@ public class PreferenceHandler {
     public static final String KEY_APP_VERSION = "appVersion";
     public static final String KEY_THUMBNAIL_SIZES = "thumbnailSizes";
     public static final String KEY_BEEP_SOUND_ID = "beepSoundId";
+    public static final String KEY_PLAN_BEEPS = "planBeeps";
 	
 	private Context ctx;
 	
@@ -205,6 +206,18 @@ public class PreferenceHandler {
 		editor.commit();
 	}
 	
+	public boolean isPlanBeeps() {
+		SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(ctx);
+		return prefs.getBoolean(KEY_PLAN_BEEPS, false);
+	}
+	
+	public void setPlanBeeps(boolean plan) {
+		SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(ctx);
+		SharedPreferences.Editor editor = prefs.edit();
+		editor.putBoolean(KEY_PLAN_BEEPS, plan);
+		editor.commit();
+	}
+	
 	public boolean getPauseBeeperDuringCall() {
 		SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(ctx);
 		return prefs.getBoolean(KEY_PAUSE_BEEPER_DURING_CALL, true);
@@ -0,0 +1,198 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme.data;
+
+import com.glanznig.beepme.helper.LocalDay;
+import com.glanznig.beepme.helper.MersenneTwister;
+
+/**
+ * Generates large numbers of beep schedules for a timer profile to check their statistical
+ * properties off-device. Only plain Java classes are involved, so it can be run on a desktop
+ * JVM with the compiled data and helper classes on the class path:
+ * java com.glanznig.beepme.data.ScheduleSimulator [distribution] [days] [uptime in s] [seed]
+ */
+public class ScheduleSimulator {
+	
+	private static final int BATCH_SIZE = 4096;
+	// 2014-01-01, only matters for the local day arithmetic
+	private static final long FIRST_DAY = 16071L;
+	private static final long UPTIME_START = 8 * 60 * 60 * 1000L;
+	
+	private TimerProfile profile;
+	private MersenneTwister random;
+	
+	public ScheduleSimulator(TimerProfile profile, long seed) {
+		this.profile = profile;
+		random = new MersenneTwister(seed);
+		profile.setRandomGenerator(random);
+	}
+	
+	/**
+	 * Draws count intervals from the profile's distribution with the profile's
+	 * (not adapted) bounds, in batches of BATCH_SIZE.
+	 */
+	public Summary sampleIntervals(long count) {
+		Summary summary = new Summary();
+		BeepIntervalDistribution distribution = profile.getDistribution();
+		long[] batch = new long[BATCH_SIZE];
+		
+		while (count > 0) {
+			if (count < batch.length) {
+				batch = new long[(int)count];
+			}
+			distribution.fill(random, profile.getMinBeepInterval(), profile.getAvgBeepInterval(),
+					profile.getMaxBeepInterval(), batch);
+			for (int i = 0; i < batch.length; i++) {
+				summary.add(batch[i]);
+			}
+			count -= batch.length;
+		}
+		
+		return summary;
+	}
+	
+	/**
+	 * Simulates the given number of days with one uptime per day starting at 8:00, using the
+	 * same (adaptive) timer as the app. Every beep is assumed to be answered.
+	 */
+	public Result simulateDays(int days, int uptimeDuration) {
+		Result result = new Result();
+		int minUptimeDuration = profile.getMinUptimeDuration();
+		
+		for (int d = 0; d < days; d++) {
+			long day = FIRST_DAY + d;
+			SchedulerState state = new SchedulerState(day);
+			long start = LocalDay.startOf(day) + UPTIME_START;
+			long end = start + uptimeDuration * 1000L;
+			state.uptimeStarted(start, minUptimeDuration);
+			
+			int beeps = 0;
+			long time = start;
+			while (true) {
+				long interval = profile.getTimer(state, time, 0);
+				time += interval * 1000L;
+				if (time > end) {
+					break;
+				}
+				
+				result.intervals.add(interval);
+				beeps += 1;
+				state.beepScheduled(time);
+				state.beepUpdated(3);
+			}
+			result.beepsPerDay.add(beeps);
+		}
+		
+		return result;
+	}
+	
+	public static class Result {
+		
+		private Summary intervals = new Summary();
+		private Summary beepsPerDay = new Summary();
+		
+		public Summary getIntervals() {
+			return intervals;
+		}
+		
+		public Summary getBeepsPerDay() {
+			return beepsPerDay;
+		}
+	}
+	
+	// running count, mean and variance (Welford), minimum and maximum
+	public static class Summary {
+		
+		private long count = 0;
+		private double mean = 0;
+		private double m2 = 0;
+		private long min = Long.MAX_VALUE;
+		private long max = Long.MIN_VALUE;
+		
+		public void add(long value) {
+			count += 1;
+			double delta = value - mean;
+			mean += delta / count;
+			m2 += delta * (value - mean);
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+		
+		public long getCount() {
+			return count;
+		}
+		
+		public double getMean() {
+			return mean;
+		}
+		
+		public double getStandardDeviation() {
+			if (count < 2) {
+				return 0;
+			}
+			
+			return Math.sqrt(m2 / (count - 1));
+		}
+		
+		public long getMin() {
+			return min;
+		}
+		
+		public long getMax() {
+			return max;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("n=%d mean=%.2f sd=%.2f min=%d max=%d", count, mean, getStandardDeviation(), min, max);
+		}
+	}
+	
+	public static void main(String[] args) {
+		int distribution = args.length > 0 ? Integer.parseInt(args[0]) : TimerProfile.DISTRIBUTION_SPLIT_UNIFORM;
+		int days = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		int uptimeDuration = args.length > 2 ? Integer.parseInt(args[2]) : 8 * 60 * 60;
+		long seed = args.length > 3 ? Long.parseLong(args[3]) : 4357L;
+		
+		// same values as the "General" profile
+		TimerProfile profile = new TimerProfile(1);
+		profile.setName("General");
+		profile.setMinUptimeDuration(60);
+		profile.setMinBeepInterval(600);
+		profile.setAvgBeepInterval(1800);
+		profile.setMaxBeepInterval(3600);
+		profile.setMinSizeBeepInterval(60);
+		profile.setUptimeCountMoveToAverage(3);
+		profile.setNumCancelledBeepsMoveToAverage(2);
+		profile.setIntervalDistribution(distribution);
+		
+		ScheduleSimulator simulator = new ScheduleSimulator(profile, seed);
+		
+		long startTime = System.nanoTime();
+		Summary intervals = simulator.sampleIntervals(days * 100L);
+		System.out.println("intervals:     " + intervals + " (" + (System.nanoTime() - startTime) / 1000000 + " ms)");
+		
+		startTime = System.nanoTime();
+		Result result = simulator.simulateDays(days, uptimeDuration);
+		System.out.println("day intervals: " + result.getIntervals() + " (" + (System.nanoTime() - startTime) / 1000000 + " ms)");
+		System.out.println("beeps per day: " + result.getBeepsPerDay());
+	}
+}
@@ -0,0 +1,154 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme.data;
+
+import com.glanznig.beepme.helper.LocalDay;
+
+/**
+ * Today's figures the beep timer depends on (uptime duration and count, number of
+ * trailing cancelled beeps), kept in memory so that scheduling the next beep does not
+ * need to query the database. It is restored once when the process starts and then
+ * updated whenever an uptime starts or ends and whenever a beep is scheduled or updated.
+ * Uptimes count with the part that falls on the current day, beeps for the day they are
+ * scheduled for.
+ */
+public class SchedulerState {
+	
+	private long day;
+	
+	// finished uptimes of the current day
+	private long uptimeDuration = 0L;
+	private int uptimeCount = 0;
+	// start of the currently running uptime, 0 if there is none
+	private long runningUptimeStart = 0L;
+	
+	// number of subsequent beeps with a status other than "scheduled" at the end of the current day
+	private int cancelledStreak = 0;
+	private boolean beepPending = false;
+	private int cancelledBeforePending = 0;
+	
+	public SchedulerState(long day) {
+		this.day = day;
+	}
+	
+	public synchronized void uptimeStarted(long start, int minUptimeDuration) {
+		// an uptime that was never ended is closed with the minimum duration
+		if (runningUptimeStart != 0L) {
+			addUptime(runningUptimeStart, runningUptimeStart + minUptimeDuration * 1000L);
+		}
+		runningUptimeStart = start;
+	}
+	
+	public synchronized void uptimeEnded(long end, int minUptimeDuration) {
+		// very short uptimes are removed from the statistics
+		if (runningUptimeStart != 0L && end - runningUptimeStart > minUptimeDuration * 1000L) {
+			addUptime(runningUptimeStart, end);
+		}
+		runningUptimeStart = 0L;
+	}
+	
+	// used for restoring finished uptimes, only the part on the current day is counted
+	public synchronized void addUptime(long start, long end) {
+		rollDay(LocalDay.of(end));
+		long from = Math.max(start, LocalDay.startOf(day));
+		if (end > from) {
+			uptimeDuration += end - from;
+			uptimeCount += 1;
+		}
+	}
+	
+	public synchronized void beepScheduled(long time) {
+		long beepDay = LocalDay.of(time);
+		if (beepDay > day) {
+			rollDay(beepDay);
+		}
+		
+		if (!beepPending) {
+			cancelledBeforePending = cancelledStreak;
+		}
+		beepPending = true;
+		cancelledStreak = 0;
+	}
+	
+	public synchronized void beepUpdated(int status) {
+		if (beepPending && status != 0) {
+			cancelledStreak = cancelledBeforePending + 1;
+			beepPending = false;
+		}
+	}
+	
+	/**
+	 * Uptime duration of today in seconds, including today's part of the running uptime if it
+	 * already lasts longer than the minimum uptime duration.
+	 */
+	public synchronized long getUptimeDuration(long now, int minUptimeDuration) {
+		rollDay(LocalDay.of(now));
+		long duration = uptimeDuration;
+		if (isRunningUptimeCounted(now, minUptimeDuration)) {
+			duration += now - Math.max(runningUptimeStart, LocalDay.startOf(day));
+		}
+		
+		return duration / 1000;
+	}
+	
+	public synchronized int getUptimeCount(long now, int minUptimeDuration) {
+		rollDay(LocalDay.of(now));
+		int count = uptimeCount;
+		if (isRunningUptimeCounted(now, minUptimeDuration)) {
+			count += 1;
+		}
+		
+		return count;
+	}
+	
+	// average uptime duration of today in seconds
+	public synchronized double getAvgUptimeDuration(long now, int minUptimeDuration) {
+		int count = getUptimeCount(now, minUptimeDuration);
+		if (count > 0) {
+			return getUptimeDuration(now, minUptimeDuration) / count;
+		}
+		
+		return 0;
+	}
+	
+	public synchronized int getNumLastCancelledBeeps(long now) {
+		rollDay(LocalDay.of(now));
+		return cancelledStreak;
+	}
+	
+	private boolean isRunningUptimeCounted(long now, int minUptimeDuration) {
+		return runningUptimeStart != 0L && now - runningUptimeStart > minUptimeDuration * 1000L;
+	}
+	
+	// resets the figures of the current day if the given day is a later one
+	private long rollDay(long newDay) {
+		if (newDay > day) {
+			day = newDay;
+			uptimeDuration = 0L;
+			uptimeCount = 0;
+			cancelledStreak = 0;
+			beepPending = false;
+			cancelledBeforePending = 0;
+		}
+		
+		return day;
+	}
+}
@@ -0,0 +1,54 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme.data;
+
+import com.glanznig.beepme.helper.MersenneTwister;
+
+/**
+ * The original BeepMe timer: a coin flip decides whether the interval is drawn
+ * uniformly from [min, avg] or from [avg, max].
+ */
+public class SplitUniformDistribution implements BeepIntervalDistribution {
+	
+	public long next(MersenneTwister random, long min, long avg, long max) {
+		if (random.nextBoolean()) {
+			return avg - random.nextLong(avg - min);
+		}
+		else {
+			return avg + random.nextLong(max - avg);
+		}
+	}
+	
+	public void fill(MersenneTwister random, long min, long avg, long max, long[] intervals) {
+		long lower = avg - min;
+		long upper = max - avg;
+		
+		for (int i = 0; i < intervals.length; i++) {
+			if (random.nextBoolean()) {
+				intervals[i] = avg - random.nextLong(lower);
+			}
+			else {
+				intervals[i] = avg + random.nextLong(upper);
+			}
+		}
+	}
+	
+}
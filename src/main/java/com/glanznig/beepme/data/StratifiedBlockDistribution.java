@@ -0,0 +1,78 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme.data;
+
+import com.glanznig.beepme.helper.MersenneTwister;
+
+/**
+ * Stratified sampling: time is split into blocks of length avg and there is exactly one
+ * beep at a uniformly random position within each block. Two beeps in adjacent blocks
+ * are kept at least min apart, intervals longer than max are not possible as long as
+ * max >= 2 * avg. The position within the current block is kept between calls,
+ * consecutive intervals therefore depend on each other. It is saved along with the
+ * random state, see getOffset().
+ */
+public class StratifiedBlockDistribution implements BeepIntervalDistribution {
+	
+	// offset of the last beep within its block
+	private long offset = 0L;
+	
+	public synchronized long next(MersenneTwister random, long min, long avg, long max) {
+		return draw(random, min, avg);
+	}
+	
+	public synchronized void fill(MersenneTwister random, long min, long avg, long max, long[] intervals) {
+		for (int i = 0; i < intervals.length; i++) {
+			intervals[i] = draw(random, min, avg);
+		}
+	}
+	
+	// offset of the last beep within its block, in seconds
+	public synchronized long getOffset() {
+		return offset;
+	}
+	
+	// continues the blocks of an earlier sequence
+	public synchronized void setOffset(long offset) {
+		this.offset = Math.max(0L, offset);
+	}
+	
+	private long draw(MersenneTwister random, long min, long avg) {
+		// without blocks there is no random position to draw
+		if (avg <= 0L) {
+			offset = 0L;
+			return Math.max(min, 0L);
+		}
+		
+		if (offset >= avg) {
+			offset = 0L;
+		}
+		long rest = avg - offset;
+		long first = Math.max(0L, Math.min(min - rest, avg - 1));
+		
+		long next = first + random.nextLong(avg - first);
+		long interval = rest + next;
+		offset = next;
+		
+		return interval;
+	}
+	
+}
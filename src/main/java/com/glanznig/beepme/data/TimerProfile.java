@@ -20,15 +20,21 @@ http://beepme.yourexp.at
 
 package com.glanznig.beepme.data;
 
-import com.glanznig.beepme.db.ScheduledBeepTable;
-import com.glanznig.beepme.db.UptimeTable;
-import com.glanznig.beepme.helper.MersenneTwister;
-
-import android.content.Context;
+import java.util.ArrayList;
+import java.util.List;
 
+import com.glanznig.beepme.helper.LocalDay;
+import com.glanznig.beepme.helper.MersenneTwister;
+import com.glanznig.beepme.helper.RandomStateStore;
 
 public class TimerProfile {
 	
+	// values of the intervalDistribution column
+	public static final int DISTRIBUTION_SPLIT_UNIFORM = 0;
+	public static final int DISTRIBUTION_EXPONENTIAL = 1;
+	public static final int DISTRIBUTION_TRUNCATED_NORMAL = 2;
+	public static final int DISTRIBUTION_STRATIFIED_BLOCK = 3;
+	
 	private Long id;
 	private String name;
 	private int minUptimeDuration;
@@ -38,12 +44,16 @@ public class TimerProfile {
 	private int minSizeBeepInterval;
 	private int uptimeCountMoveToAverage;
 	private int numCancelledBeepsMoveToAverage;
+	private int intervalDistribution = DISTRIBUTION_SPLIT_UNIFORM;
 	
-	private MersenneTwister randomGenerator;
+	private MersenneTwister randomGenerator = null;
+	// set when intervals were drawn since the state was saved last
+	private boolean randomStateChanged = false;
+	private RandomStateStore randomStateStore = null;
+	private BeepIntervalDistribution distribution = null;
 	
 	public TimerProfile(long id) {
 		setId(id);
-		randomGenerator = new MersenneTwister();
 	}
 	
 	private void setId(long id) {
@@ -67,69 +77,151 @@ public class TimerProfile {
 		return name;
 	}
 	
-	public long getTimer(Context ctx) {
-		boolean negative = randomGenerator.nextBoolean();
-		long randTime = 0;
+	public long getTimer(SchedulerState state) {
+		long now = System.currentTimeMillis();
+		return getTimer(state, now, state.getNumLastCancelledBeeps(now));
+	}
+	
+	/**
+	 * Plans the beeps from the given time until the end of that day in one go, assuming that
+	 * the uptime continues and that every planned beep gets answered. There is always at least
+	 * one beep in the plan, even if it falls on the next day. Times are in milliseconds.
+	 */
+	public List<Long> getPlan(SchedulerState state, long from) {
+		ArrayList<Long> plan = new ArrayList<Long>();
+		long endOfDay = LocalDay.startOf(LocalDay.of(from) + 1);
+		
+		long time = from + getTimer(state, from, state.getNumLastCancelledBeeps(from)) * 1000L;
+		plan.add(Long.valueOf(time));
+		while (time < endOfDay) {
+			time += getTimer(state, time, 0) * 1000L;
+			if (time < endOfDay) {
+				plan.add(Long.valueOf(time));
+			}
+		}
+		
+		return plan;
+	}
+	
+	long getTimer(SchedulerState state, long now, int numLastCancelled) {
+		long[] bounds = getBounds(state, now, numLastCancelled);
+		long randTime = getDistribution().next(getRandomGenerator(), bounds[0], bounds[1], bounds[2]);
+		randomStateChanged = true;
+		
+		//clamp timer with min(MIN_UPTIME_DURATION)
+		if (randTime < minUptimeDuration) {
+			randTime = minUptimeDuration;
+		}
 		
+		return randTime;
+	}
+	
+	/**
+	 * Interval bounds {min, avg, max} in seconds for the next beep. At first these are the
+	 * profile's values, later they are fitted to the average beeper uptime of today.
+	 */
+	long[] getBounds(SchedulerState state, long now, int numLastCancelled) {
 		long avg = 0;
 		long min = 0;
 		long max = 0;
 		
-		long uptimeCount = new UptimeTable(ctx, this).getUptimeDurToday();
-		int numLastCancelled = new ScheduledBeepTable(ctx).getNumLastSubsequentCancelledBeeps();
+		long uptimeCount = state.getUptimeDuration(now, minUptimeDuration);
 		
 		//start with approximation values
 		if (uptimeCount <= uptimeCountMoveToAverage && numLastCancelled < numCancelledBeepsMoveToAverage) {
 			avg = avgBeepInterval;
-			if (negative) {
-				max = avg;
-				min = minBeepInterval;
-			}
-			else {
-				max = maxBeepInterval;
-				min = avg;
-			}
+			min = minBeepInterval;
+			max = maxBeepInterval;
 		} // max > min iff min < avg < max
 		
 		//later, try to fit beep into "avg beeper uptime today" interval
 		else {
-			double avgUptimeDuration = new UptimeTable(ctx, this).getAvgUptimeDurToday();
+			double avgUptimeDuration = state.getAvgUptimeDuration(now, minUptimeDuration);
 			
 			avg = Math.min(Math.round(avgUptimeDuration / 2), avgBeepInterval);
-			if (negative) {
-				max = avg;
-				min = minBeepInterval;
-				if (min >= max) {
-					min = minUptimeDuration;
-					if (min >= max) {
-						min = max - minSizeBeepInterval;
-					}
+			min = minBeepInterval;
+			if (min >= avg) {
+				min = minUptimeDuration;
+				if (min >= avg) {
+					min = avg - minSizeBeepInterval;
 				}
 			}
-			else {
-				max = Math.min(Math.round(avgUptimeDuration), maxBeepInterval);
-				min = avg;
-				if (min >= max) {
-					max = min + minSizeBeepInterval;
-				}
+			max = Math.min(Math.round(avgUptimeDuration), maxBeepInterval);
+			if (avg >= max) {
+				max = avg + minSizeBeepInterval;
 			}
 		} // if max <= min, interval is of size minSizeBeepInterval to make sure that max > min
 		
-		//must be max > min
-		long randTerm = randomGenerator.nextLong(max - min);
-		if (negative) {
-			randTime = avg - randTerm;
-		}
-		else {
-			randTime = avg + randTerm;
+		return new long[] { min, avg, max };
+	}
+	
+	public BeepIntervalDistribution getDistribution() {
+		if (distribution == null) {
+			switch (intervalDistribution) {
+				case DISTRIBUTION_EXPONENTIAL:
+					distribution = new ExponentialDistribution();
+					break;
+				case DISTRIBUTION_TRUNCATED_NORMAL:
+					distribution = new TruncatedNormalDistribution();
+					break;
+				case DISTRIBUTION_STRATIFIED_BLOCK:
+					distribution = new StratifiedBlockDistribution();
+					break;
+				default:
+					distribution = new SplitUniformDistribution();
+					break;
+			}
 		}
 		
-		//clamp timer with min(MIN_UPTIME_DURATION)
-		if (randTime < minUptimeDuration) {
-			randTime = minUptimeDuration;
+		return distribution;
+	}
+	
+	public int getIntervalDistribution() {
+		return intervalDistribution;
+	}
+	
+	public void setIntervalDistribution(int intervalDistribution) {
+		this.intervalDistribution = intervalDistribution;
+		distribution = null;
+	}
+	
+	// only for reproducible simulations
+	void setRandomGenerator(MersenneTwister randomGenerator) {
+		this.randomGenerator = randomGenerator;
+	}
+	
+	public void setRandomStateStore(RandomStateStore randomStateStore) {
+		this.randomStateStore = randomStateStore;
+	}
+	
+	// the saved generator state is only read when the first interval is drawn
+	private MersenneTwister getRandomGenerator() {
+		if (randomGenerator == null) {
+			if (randomStateStore != null) {
+				randomGenerator = randomStateStore.restore();
+				if (getDistribution() instanceof StratifiedBlockDistribution) {
+					((StratifiedBlockDistribution)distribution).setOffset(randomStateStore.getDistributionState());
+				}
+			}
+			else {
+				randomGenerator = new MersenneTwister();
+			}
 		}
 		
-		return randTime;
+		return randomGenerator;
+	}
+	
+	// saves the generator state in the background if it advanced, so the sequence of intervals
+	// continues after a restart
+	public void saveRandomState() {
+		if (randomStateStore != null && randomGenerator != null && randomStateChanged) {
+			randomStateChanged = false;
+			long distributionState = 0L;
+			if (distribution instanceof StratifiedBlockDistribution) {
+				distributionState = ((StratifiedBlockDistribution)distribution).getOffset();
+			}
+			randomStateStore.saveInBackground(randomGenerator, distributionState);
+		}
 	}
 
 	public int getMinUptimeDuration() {
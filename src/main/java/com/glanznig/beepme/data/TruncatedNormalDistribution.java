@@ -0,0 +1,54 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme.data;
+
+import com.glanznig.beepme.helper.MersenneTwister;
+
+/**
+ * Normally distributed intervals centered on avg, with the standard deviation set so that
+ * [min, max] spans four of them. Values outside of [min, max] are drawn again, which
+ * happens for about one in twenty draws if avg is in the middle.
+ */
+public class TruncatedNormalDistribution implements BeepIntervalDistribution {
+	
+	public long next(MersenneTwister random, long min, long avg, long max) {
+		return draw(random, min, avg, max, (max - min) / 4.0);
+	}
+	
+	public void fill(MersenneTwister random, long min, long avg, long max, long[] intervals) {
+		double sd = (max - min) / 4.0;
+		
+		for (int i = 0; i < intervals.length; i++) {
+			intervals[i] = draw(random, min, avg, max, sd);
+		}
+	}
+	
+	private static long draw(MersenneTwister random, long min, long avg, long max, double sd) {
+		long value;
+		do {
+			value = avg + Math.round(random.nextGaussian() * sd);
+		}
+		while (value < min || value > max);
+		
+		return value;
+	}
+	
+}
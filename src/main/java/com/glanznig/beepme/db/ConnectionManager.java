@@ -0,0 +1,104 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+/**
+ * Keeps one writable connection per database open for the whole lifetime of the process.
+ * The table classes must not close the connection they get from {@link StorageHandler#getDb()},
+ * SQLiteDatabase is thread-safe and is shared between all of them. Write-ahead logging is
+ * turned on so that reads (list, history, export) do not block the beep lifecycle writes.
+ */
+public class ConnectionManager {
+
+	private static final String TAG = "ConnectionManager";
+
+	private final SQLiteOpenHelper helper;
+	private SQLiteDatabase db = null;
+	private StatementCache statements = null;
+
+	public ConnectionManager(SQLiteOpenHelper helper) {
+		this.helper = helper;
+	}
+
+	public synchronized SQLiteDatabase getConnection() {
+		if (db == null || !db.isOpen()) {
+			if (statements != null) {
+				statements.close();
+				statements = null;
+			}
+			db = helper.getWritableDatabase();
+			if (!db.enableWriteAheadLogging()) {
+				Log.w(TAG, "write-ahead logging not available for " + helper.getDatabaseName());
+			}
+		}
+
+		return db;
+	}
+
+	// statements are compiled against the current connection and dropped when it is closed
+	public synchronized SQLiteStatement getStatement(String sql) {
+		SQLiteDatabase db = getConnection();
+		if (statements == null) {
+			statements = new StatementCache(db);
+		}
+
+		return statements.get(sql);
+	}
+
+	/**
+	 * Writes all changes from the write-ahead log back into the main database file.
+	 * Needs to be called before the database file is copied, e.g. for the raw export.
+	 */
+	public synchronized void checkpoint() {
+		if (db != null && db.isOpen()) {
+			Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(FULL)", null);
+			if (cursor != null) {
+				cursor.moveToFirst();
+				cursor.close();
+			}
+		}
+	}
+
+	/**
+	 * Closes the shared connection, only to be used if the database file itself
+	 * is going to be moved or deleted. The next call to getConnection() reopens it.
+	 */
+	public synchronized void close() {
+		if (statements != null) {
+			statements.close();
+			statements = null;
+		}
+		if (db != null) {
+			helper.close();
+			db = null;
+		}
+	}
+
+	public SQLiteOpenHelper getHelper() {
+		return helper;
+	}
+}
@@ -0,0 +1,181 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.glanznig.beepme.data.DayStatistics;
+import com.glanznig.beepme.helper.LocalDay;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Rollup of accepted/declined samples and finished uptimes per local day. The rows are
+ * updated within the same transaction as the samples and uptimes they are derived from.
+ */
+public class DailyStatsTable extends StorageHandler {
+	
+	private static final String TAG = "DailyStatsTable";
+	
+	private static final String TBL_NAME = "daily_stats";
+	private static final String TBL_CREATE =
+			"CREATE TABLE IF NOT EXISTS " + TBL_NAME + " (" +
+			"day INTEGER PRIMARY KEY, " +
+			"accepted INTEGER NOT NULL DEFAULT 0, " +
+			"declined INTEGER NOT NULL DEFAULT 0, " +
+			"uptime INTEGER NOT NULL DEFAULT 0" +
+			")";
+	
+	public DailyStatsTable(Context ctx) {
+		super(ctx);
+	}
+	
+	public static String getTableName() {
+		return TBL_NAME;
+	}
+	
+	public static void createTable(SQLiteDatabase db) {
+		db.execSQL(TBL_CREATE);
+	}
+	
+	public static void dropTable(SQLiteDatabase db) {
+		db.execSQL("DROP TABLE IF EXISTS " + TBL_NAME);
+	}
+	
+	public static void truncateTable(SQLiteDatabase db) {
+		dropTable(db);
+		createTable(db);
+	}
+	
+	// recompute all rows from the sample and uptime tables
+	public static void rebuild(SQLiteDatabase db) {
+		db.beginTransaction();
+		try {
+			db.execSQL("DELETE FROM " + TBL_NAME);
+			db.execSQL("INSERT INTO " + TBL_NAME + " (day, accepted, declined) " +
+					"SELECT " + LocalDay.sql("timestamp") + " AS d, SUM(accepted = 1), SUM(accepted = 0) FROM " +
+					SampleTable.getTableName() + " GROUP BY d");
+			
+			// uptimes without end are either running or were not ended due to an error,
+			// neither is part of the statistics
+			Cursor cursor = db.query(UptimeTable.getTableName(), new String[] { "start", "end" },
+					"end IS NOT NULL", null, null, null, "start");
+			if (cursor != null && cursor.getCount() > 0) {
+				cursor.moveToFirst();
+				do {
+					addUptime(db, cursor.getLong(0), cursor.getLong(1));
+				}
+				while (cursor.moveToNext());
+			}
+			if (cursor != null) {
+				cursor.close();
+			}
+			
+			db.setTransactionSuccessful();
+		}
+		finally {
+			db.endTransaction();
+		}
+	}
+	
+	// add (or with negative values subtract) samples of the day the timestamp lies in
+	public static void addSamples(SQLiteDatabase db, long timestamp, int accepted, int declined) {
+		long day = LocalDay.of(timestamp);
+		ensureDay(db, day);
+		db.execSQL("UPDATE " + TBL_NAME + " SET accepted = accepted + ?, declined = declined + ? WHERE day = ?",
+				new Object[] { Integer.valueOf(accepted), Integer.valueOf(declined), Long.valueOf(day) });
+	}
+	
+	// add a finished uptime, uptimes extending over midnight are split up
+	public static void addUptime(SQLiteDatabase db, long start, long end) {
+		long day = LocalDay.of(start);
+		
+		while (start < end) {
+			long until = Math.min(end, LocalDay.startOf(day + 1));
+			ensureDay(db, day);
+			db.execSQL("UPDATE " + TBL_NAME + " SET uptime = uptime + ? WHERE day = ?",
+					new Object[] { Long.valueOf(until - start), Long.valueOf(day) });
+			
+			start = until;
+			day += 1;
+		}
+	}
+	
+	private static void ensureDay(SQLiteDatabase db, long day) {
+		db.execSQL("INSERT OR IGNORE INTO " + TBL_NAME + " (day) VALUES (?)", new Object[] { Long.valueOf(day) });
+	}
+	
+	// all days, most recent day first
+	public List<DayStatistics> getDailyStats() {
+		SQLiteDatabase db = getDb();
+		List<DayStatistics> list = new ArrayList<DayStatistics>();
+		
+		Cursor cursor = db.query(getTableName(), new String[] { "day", "accepted", "declined", "uptime" },
+				"accepted > 0 OR declined > 0 OR uptime > 0", null, null, null, "day DESC");
+		
+		if (cursor != null && cursor.getCount() > 0) {
+			cursor.moveToFirst();
+			do {
+				list.add(readStats(cursor));
+			}
+			while (cursor.moveToNext());
+		}
+		if (cursor != null) {
+			cursor.close();
+		}
+		
+		return list;
+	}
+	
+	public DayStatistics getDailyStats(long day) {
+		SQLiteDatabase db = getDb();
+		DayStatistics stats = null;
+		
+		Cursor cursor = db.query(getTableName(), new String[] { "day", "accepted", "declined", "uptime" },
+				"day = ?", new String[] { String.valueOf(day) }, null, null, null);
+		
+		if (cursor != null && cursor.getCount() > 0) {
+			cursor.moveToFirst();
+			stats = readStats(cursor);
+		}
+		if (cursor != null) {
+			cursor.close();
+		}
+		
+		if (stats == null) {
+			stats = new DayStatistics(day);
+		}
+		
+		return stats;
+	}
+	
+	private static DayStatistics readStats(Cursor cursor) {
+		DayStatistics stats = new DayStatistics(cursor.getLong(0));
+		stats.setAccepted(cursor.getInt(1));
+		stats.setDeclined(cursor.getInt(2));
+		stats.setUptimeDuration(cursor.getLong(3));
+		
+		return stats;
+	}
+}
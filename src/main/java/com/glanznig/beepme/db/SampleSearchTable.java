@@ -0,0 +1,149 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+/**
+ * Full-text index over title, description and keywords of the samples. The docid of a row is
+ * the id of the sample, rows are rewritten by SampleTable whenever a sample is saved.
+ */
+public class SampleSearchTable extends StorageHandler {
+	
+	private static final String TAG = "SampleSearchTable";
+	
+	private static final String TBL_NAME = "sample_search";
+	private static final String TBL_CREATE =
+			"CREATE VIRTUAL TABLE IF NOT EXISTS " + TBL_NAME + " USING fts4(title, description, tags)";
+	private static final String TBL_SELECT =
+			"SELECT s._id, s.title, s.description, (SELECT group_concat(t.name, ' ') FROM " +
+			SampleTagTable.getTableName() + " st INNER JOIN " + TagTable.getTableName() + " t ON t._id = st.tag_id " +
+			"WHERE st.sample_id = s._id) FROM " + SampleTable.getTableName() + " s";
+	
+	public SampleSearchTable(Context ctx) {
+		super(ctx);
+	}
+	
+	public static String getTableName() {
+		return TBL_NAME;
+	}
+	
+	public static void createTable(SQLiteDatabase db) {
+		db.execSQL(TBL_CREATE);
+	}
+	
+	public static void dropTable(SQLiteDatabase db) {
+		db.execSQL("DROP TABLE IF EXISTS " + TBL_NAME);
+	}
+	
+	public static void truncateTable(SQLiteDatabase db) {
+		dropTable(db);
+		createTable(db);
+	}
+	
+	// (re)index all samples
+	public static void rebuild(SQLiteDatabase db) {
+		db.execSQL("DELETE FROM " + TBL_NAME);
+		db.execSQL("INSERT INTO " + TBL_NAME + " (docid, title, description, tags) " + TBL_SELECT);
+	}
+	
+	// (re)index one sample, to be called within the transaction that saves it
+	public static void index(SQLiteDatabase db, long sampleId) {
+		db.execSQL("DELETE FROM " + TBL_NAME + " WHERE docid = ?", new Object[] { Long.valueOf(sampleId) });
+		db.execSQL("INSERT INTO " + TBL_NAME + " (docid, title, description, tags) " + TBL_SELECT +
+				" WHERE s._id = ?", new Object[] { Long.valueOf(sampleId) });
+	}
+	
+	/**
+	 * Returns the ids of all samples matching every word of the query as a prefix. Samples
+	 * with more matching term occurrences come first, samples with the same number of
+	 * occurrences are ordered by timestamp descending.
+	 */
+	public List<Long> search(String query, boolean declined) {
+		List<Long> idList = new ArrayList<Long>();
+		String match = toMatchExpression(query);
+		
+		if (match != null) {
+			SQLiteDatabase db = getDb();
+			String sql = "SELECT s._id, offsets(" + TBL_NAME + ") AS o FROM " + TBL_NAME + " INNER JOIN " + SampleTable.getTableName() +
+					" s ON s._id = " + TBL_NAME + ".docid WHERE " + TBL_NAME + " MATCH ?";
+			if (declined == false) {
+				sql += " AND s.accepted = 1";
+			}
+			// offsets() lists 4 space separated integers for each matching term occurrence,
+			// so the number of occurrences is (number of spaces + 1) / 4
+			sql += " ORDER BY (length(o) - length(replace(o, ' ', '')) + 1) / 4 DESC, s.timestamp DESC";
+			
+			Cursor cursor = null;
+			try {
+				cursor = db.rawQuery(sql, new String[] { match });
+				if (cursor != null && cursor.getCount() > 0) {
+					cursor.moveToFirst();
+					do {
+						idList.add(cursor.getLong(0));
+					}
+					while (cursor.moveToNext());
+				}
+			}
+			catch (SQLiteException se) {
+				Log.e(TAG, "error in search query " + match, se);
+			}
+			finally {
+				if (cursor != null) {
+					cursor.close();
+				}
+			}
+		}
+		
+		return idList;
+	}
+	
+	// every word is quoted and used as a prefix query, words are combined with AND
+	private static String toMatchExpression(String query) {
+		if (query == null) {
+			return null;
+		}
+		
+		StringBuilder match = new StringBuilder();
+		String[] words = query.replace("\"", " ").trim().split("\\s+");
+		for (int i = 0; i < words.length; i++) {
+			if (words[i].length() > 0) {
+				if (match.length() > 0) {
+					match.append(" ");
+				}
+				match.append("\"").append(words[i]).append("*\"");
+			}
+		}
+		
+		if (match.length() > 0) {
+			return match.toString();
+		}
+		
+		return null;
+	}
+}
@@ -21,20 +21,22 @@ http://beepme.yourexp.at
 package com.glanznig.beepme.db;
 
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
-import java.util.GregorianCalendar;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 
+import com.glanznig.beepme.data.DayStatistics;
 import com.glanznig.beepme.data.Sample;
 import com.glanznig.beepme.data.Tag;
+import com.glanznig.beepme.helper.LocalDay;
 
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
 
 public class SampleTable extends StorageHandler {
 	
@@ -50,8 +52,17 @@ public class SampleTable extends StorageHandler {
 			"accepted INTEGER NOT NULL, " +
 			"photoUri TEXT, " +
 			"uptimeId INTEGER, " + //add NOT NULL
+			"day INTEGER, " +
 			"FOREIGN KEY (uptimeId) REFERENCES "  + UptimeTable.getTableName() + " (_id)" +
 			")";
+	private static final String[] IDX_CREATE = {
+			"CREATE INDEX IF NOT EXISTS " + TBL_NAME + "_timestamp_accepted_idx ON " + TBL_NAME + " (timestamp, accepted)",
+			"CREATE INDEX IF NOT EXISTS " + TBL_NAME + "_accepted_timestamp_idx ON " + TBL_NAME + " (accepted, timestamp)"
+	};
+	private static final String IDX_DAY_CREATE =
+			"CREATE INDEX IF NOT EXISTS " + TBL_NAME + "_day_accepted_idx ON " + TBL_NAME + " (day, accepted)";
+	private static final String SQL_INSERT = "INSERT INTO " + TBL_NAME +
+			" (timestamp, title, description, accepted, photoUri, uptimeId, day) VALUES (?, ?, ?, ?, ?, ?, ?)";
 	
 	public SampleTable(Context ctx) {
 		super(ctx);
@@ -63,6 +74,21 @@ public class SampleTable extends StorageHandler {
 	
 	public static void createTable(SQLiteDatabase db) {
 		db.execSQL(TBL_CREATE);
+		createIndexes(db);
+		db.execSQL(IDX_DAY_CREATE);
+	}
+	
+	// adds the local day column to databases created before schema version 23
+	public static void addDayColumn(SQLiteDatabase db) {
+		db.execSQL("ALTER TABLE " + TBL_NAME + " ADD COLUMN day INTEGER");
+		db.execSQL("UPDATE " + TBL_NAME + " SET day = " + LocalDay.sql("timestamp"));
+		db.execSQL(IDX_DAY_CREATE);
+	}
+	
+	public static void createIndexes(SQLiteDatabase db) {
+		for (int i = 0; i < IDX_CREATE.length; i++) {
+			db.execSQL(IDX_CREATE[i]);
+		}
 	}
 	
 	public static void dropTable(SQLiteDatabase db) {
@@ -85,45 +111,98 @@ public class SampleTable extends StorageHandler {
 		if (cursor != null && cursor.getCount() > 0) {
 			cursor.moveToFirst();
 			
-			s = new Sample(cursor.getLong(0));
-			long timestamp = cursor.getLong(1);
-			s.setTimestamp(new Date(timestamp));
-			if (!cursor.isNull(2)) {
-				s.setTitle(cursor.getString(2));
-			}
-			if (!cursor.isNull(3)) {
-				s.setDescription(cursor.getString(3));
-			}
-			if (cursor.getInt(4) == 0) {
-				s.setAccepted(false);
-			}
-			else {
-				s.setAccepted(true);
-			}
-			if (!cursor.isNull(5)) {
-				s.setPhotoUri(cursor.getString(5));
-			}
-			if (!cursor.isNull(6)) {
-				s.setUptimeId(cursor.getLong(6));
-			}
+			s = readSample(cursor);
 		}
 		cursor.close();
-		db.close();
 		
 		return s;
 	}
 	
 	public Sample getSampleWithTags(long id) {
-		Sample s = getSample(id);
-		if (s != null) {
-			List<Tag> tagList = getTagsOfSample(s.getId());
-			if (tagList != null) {
-				Iterator<Tag> i = tagList.iterator();
-				while (i.hasNext()) {
-					s.addTag(i.next());
+		List<Sample> list = getSamplesWithTags("s._id = ?", new String[] { String.valueOf(id) });
+		if (list.size() > 0) {
+			return list.get(0);
+		}
+		
+		return null;
+	}
+	
+	public List<Sample> getSamplesWithTags() {
+		return getSamplesWithTags(false);
+	}
+	
+	// loads samples together with their tags in one query, ordered by timestamp descending
+	public List<Sample> getSamplesWithTags(boolean declined) {
+		if (declined == false) {
+			return getSamplesWithTags("s.accepted = 1", null);
+		}
+		
+		return getSamplesWithTags(null, null);
+	}
+	
+	private List<Sample> getSamplesWithTags(String where, String[] whereArgs) {
+		SQLiteDatabase db = getDb();
+		List<Sample> sampleList = new ArrayList<Sample>();
+		
+		String query = "SELECT s._id, s.timestamp, s.title, s.description, s.accepted, s.photoUri, s.uptimeId, " +
+				"t._id, t.name, t.vocabulary_id FROM " + getTableName() + " s " +
+				"LEFT JOIN " + SampleTagTable.getTableName() + " st ON st.sample_id = s._id " +
+				"LEFT JOIN " + TagTable.getTableName() + " t ON t._id = st.tag_id";
+		if (where != null) {
+			query += " WHERE " + where;
+		}
+		// timestamp is unique, so all rows of one sample are adjacent
+		query += " ORDER BY s.timestamp DESC";
+		
+		Cursor cursor = db.rawQuery(query, whereArgs);
+		
+		if (cursor != null && cursor.getCount() > 0) {
+			cursor.moveToFirst();
+			Sample s = null;
+			
+			do {
+				if (s == null || s.getId() != cursor.getLong(0)) {
+					s = readSample(cursor);
+					sampleList.add(s);
+				}
+				if (!cursor.isNull(7)) {
+					Tag t = new Tag(cursor.getLong(7));
+					t.setName(cursor.getString(8));
+					t.setVocabularyId(cursor.getLong(9));
+					s.addTag(t);
 				}
 			}
+			while (cursor.moveToNext());
+		}
+		if (cursor != null) {
+			cursor.close();
+		}
+		
+		return sampleList;
+	}
+	
+	private static Sample readSample(Cursor cursor) {
+		Sample s = new Sample(cursor.getLong(0));
+		s.setTimestamp(new Date(cursor.getLong(1)));
+		if (!cursor.isNull(2)) {
+			s.setTitle(cursor.getString(2));
 		}
+		if (!cursor.isNull(3)) {
+			s.setDescription(cursor.getString(3));
+		}
+		if (cursor.getInt(4) == 0) {
+			s.setAccepted(false);
+		}
+		else {
+			s.setAccepted(true);
+		}
+		if (!cursor.isNull(5)) {
+			s.setPhotoUri(cursor.getString(5));
+		}
+		if (!cursor.isNull(6)) {
+			s.setUptimeId(cursor.getLong(6));
+		}
+		
 		return s;
 	}
 	
@@ -146,14 +225,12 @@ public class SampleTable extends StorageHandler {
 				}
 				while (cursor.moveToNext());
 				cursor.close();
-				db.close();
 				
 				return tagList;
 			}
 			else if (cursor != null) {
 				cursor.close();
 			}
-			db.close();
 		}
 		
 		return null;
@@ -179,37 +256,70 @@ public class SampleTable extends StorageHandler {
 			cursor.moveToFirst();
 			
 			do {
-				Sample s = new Sample(cursor.getLong(0));
-				long timestamp = cursor.getLong(1);
-				s.setTimestamp(new Date(timestamp));
-				if (!cursor.isNull(2)) {
-					s.setTitle(cursor.getString(2));
-				}
-				if (!cursor.isNull(3)) {
-					s.setDescription(cursor.getString(3));
-				}
-				if (cursor.getInt(4) == 0) {
-					s.setAccepted(false);
-				}
-				else {
-					s.setAccepted(true);
-				}
-				if (!cursor.isNull(5)) {
-					s.setPhotoUri(cursor.getString(5));
-				}
-				if (!cursor.isNull(6)) {
-					s.setUptimeId(cursor.getLong(6));
-				}
+				Sample s = readSample(cursor);
 				sampleList.add(s);
 			}
 			while (cursor.moveToNext());
 			cursor.close();
 		}
-		db.close();
 		
 		return sampleList;
 	}
 	
+	/**
+	 * Accepted samples that come after the given one in the order of the sample list (most
+	 * recent first), i.e. older ones or of the same time with a lower id. The first skip of
+	 * these are left out, keep skip small, it is applied by stepping over rows.
+	 */
+	public List<Sample> getAcceptedSamplesBefore(long timestamp, long id, int skip, int limit) {
+		SQLiteDatabase db = getDb();
+		List<Sample> sampleList = new ArrayList<Sample>();
+		
+		Cursor cursor = db.query(getTableName(), new String[] {"_id", "timestamp", "title", "description",
+				"accepted", "photoUri", "uptimeId"}, "accepted = 1 AND (timestamp < ? OR (timestamp = ? AND _id < ?))",
+				new String[] { String.valueOf(timestamp), String.valueOf(timestamp), String.valueOf(id) },
+				null, null, "timestamp DESC, _id DESC", String.valueOf(skip) + "," + String.valueOf(limit));
+		
+		if (cursor != null && cursor.getCount() > 0) {
+			cursor.moveToFirst();
+			
+			do {
+				sampleList.add(readSample(cursor));
+			}
+			while (cursor.moveToNext());
+		}
+		if (cursor != null) {
+			cursor.close();
+		}
+		
+		return sampleList;
+	}
+	
+	// number of accepted samples per local day, most recent day first
+	public List<DayStatistics> getAcceptedSamplesPerDay() {
+		SQLiteDatabase db = getDb();
+		List<DayStatistics> list = new ArrayList<DayStatistics>();
+		
+		Cursor cursor = db.rawQuery("SELECT day, COUNT(*) FROM " + getTableName() +
+				" WHERE accepted = 1 GROUP BY day ORDER BY day DESC", null);
+		
+		if (cursor != null && cursor.getCount() > 0) {
+			cursor.moveToFirst();
+			
+			do {
+				DayStatistics stats = new DayStatistics(cursor.getLong(0));
+				stats.setAccepted(cursor.getInt(1));
+				list.add(stats);
+			}
+			while (cursor.moveToNext());
+		}
+		if (cursor != null) {
+			cursor.close();
+		}
+		
+		return list;
+	}
+	
 	public List<Long> getSampleIds() {
 		SQLiteDatabase db = getDb();
 		List<Long> idList = new ArrayList<Long>();
@@ -225,7 +335,6 @@ public class SampleTable extends StorageHandler {
 			while (cursor.moveToNext());
 			cursor.close();
 		}
-		db.close();
 		
 		return idList;
 	}
@@ -237,27 +346,68 @@ public class SampleTable extends StorageHandler {
 			boolean success = true;
 			SQLiteDatabase db = getDb();
 			 
-		    ContentValues values = new ContentValues();
-		    if (s.getTimestamp() != null) {
-		    	values.put("timestamp", String.valueOf(s.getTimestamp().getTime()));
-		    }
-		    else {
+		    if (s.getTimestamp() == null) {
 		    	success = false;
 		    }
-		    values.put("title", s.getTitle());
-		    values.put("description", s.getDescription());
-		    if (s.getAccepted()) {
-		    	values.put("accepted", "1");
-		    }
-		    else {
-		    	values.put("accepted", "0");
-		    }
-		    values.put("photoUri", s.getPhotoUri());
-		    values.put("uptimeId", s.getUptimeId());
 		 
 		    if (success) {
-		    	long sampleId = db.insert(getTableName(), null, values);
+		    	long sampleId;
+		    	List<Tag> tags = null;
+		    	TagTable.IndexChanges tagChanges = new TagTable.IndexChanges();
+		    	boolean committed = false;
+		    	db.beginTransaction();
+		    	try {
+		    		SQLiteStatement stmt = getStatement(SQL_INSERT);
+		    		synchronized (stmt) {
+		    			stmt.bindLong(1, s.getTimestamp().getTime());
+		    			bindStringOrNull(stmt, 2, s.getTitle());
+		    			bindStringOrNull(stmt, 3, s.getDescription());
+		    			if (s.getAccepted()) {
+		    				stmt.bindLong(4, 1);
+		    			}
+		    			else {
+		    				stmt.bindLong(4, 0);
+		    			}
+		    			bindStringOrNull(stmt, 5, s.getPhotoUri());
+		    			stmt.bindLong(6, s.getUptimeId());
+		    			stmt.bindLong(7, LocalDay.of(s.getTimestamp().getTime()));
+		    			try {
+		    				sampleId = stmt.executeInsert();
+		    			}
+		    			catch (SQLiteConstraintException sce) {
+		    				Log.e(TAG, "error inserting sample", sce);
+		    				sampleId = -1;
+		    			}
+		    		}
+		    		if (sampleId != -1) {
+		    			if (s.getAccepted()) {
+		    				DailyStatsTable.addSamples(db, s.getTimestamp().getTime(), 1, 0);
+		    			}
+		    			else {
+		    				DailyStatsTable.addSamples(db, s.getTimestamp().getTime(), 0, 1);
+		    			}
+		    			
+		    			if (s.getTags().size() > 0) {
+		    				tags = new TagTable(this.getContext()).setTags(sampleId, s.getTags(), tagChanges);
+		    			}
+		    			SampleSearchTable.index(db, sampleId);
+		    		}
+		    		db.setTransactionSuccessful();
+		    		committed = true;
+		    	}
+		    	finally {
+		    		db.endTransaction();
+		    	}
+		    	if (committed) {
+		    		tagChanges.apply(getDatabaseName());
+		    	}
 		    	sCreated = new Sample(sampleId);
+		    	if (tags != null) {
+		    		Iterator<Tag> i = tags.iterator();
+		    		while (i.hasNext()) {
+		    			sCreated.addTag(i.next());
+		    		}
+		    	}
 		    	sCreated.setAccepted(s.getAccepted());
 		    	if (s.getDescription() != null) {
 		    		sCreated.setDescription(s.getDescription());
@@ -275,24 +425,22 @@ public class SampleTable extends StorageHandler {
 		    		sCreated.setUptimeId(s.getUptimeId());
 		    	}
 		    }
-		    db.close();
-		    
-		    if (s.getTags().size() > 0) {
-		    	Iterator<Tag> i = s.getTags().iterator();
-		    	TagTable tt = new TagTable(this.getContext());
-		    	while (i.hasNext()) {
-		    		Tag t = i.next();
-		    		sCreated.addTag(tt.addTag(t.getVocabularyId(), t.getName(), s.getId()));
-		    	}
-		    }
 		}
 		
 		return sCreated;
 	}
 	
+	private static void bindStringOrNull(SQLiteStatement stmt, int index, String value) {
+		if (value != null) {
+			stmt.bindString(index, value);
+		}
+		else {
+			stmt.bindNull(index);
+		}
+	}
+	
 	public boolean editSample(Sample s) {
 		SQLiteDatabase db = getDb();
-		TagTable tt = new TagTable(this.getContext());
 		 
 	    ContentValues values = new ContentValues();
 	    values.put("title", s.getTitle());
@@ -306,207 +454,108 @@ public class SampleTable extends StorageHandler {
 	    values.put("photoUri", s.getPhotoUri());
 	    values.put("uptimeId", s.getUptimeId());
 	    
-	    int numRows = db.update(getTableName(), values, "_id=?", new String[] { String.valueOf(s.getId()) });
-	    db.close();
-	    
-	    List<Tag> dbTagList = getTagsOfSample(s.getId());
-	    List<Tag> sTagList = s.getTags();
-	    
-	    if (sTagList.size() == 0 && dbTagList != null) {
-	    	//delete all
-	    	Iterator<Tag> i = dbTagList.iterator();
-	    	while (i.hasNext()) {
-	    		Tag t = i.next();
-	    		tt.removeTag(t.getVocabularyId(), t.getName(), s.getId());
-	    	}
-	    }
-	    else if (sTagList.size() > 0 && dbTagList == null) {
-	    	//add all
-	    	Iterator<Tag> i = sTagList.iterator();
-	    	while (i.hasNext()) {
-	    		Tag t = i.next();
-	    		tt.addTag(t.getVocabularyId(), t.getName(), s.getId());
-	    	}
-	    }
-	    else if (sTagList.size() > 0 && dbTagList != null) {
-	    	//sync, if changes
-	    	if (!sTagList.equals(dbTagList)) {
-	    		HashSet<String> sTagSet = new HashSet<String>();
-	    		Iterator<Tag> i = sTagList.iterator();
-	    		while (i.hasNext()) {
-	    			Tag t = i.next();
-	    			sTagSet.add(t.getName());
-	    		}
+	    int numRows = 0;
+	    TagTable.IndexChanges tagChanges = new TagTable.IndexChanges();
+	    boolean committed = false;
+	    db.beginTransaction();
+	    try {
+	    	// keep daily statistics in sync if the sample changes from accepted to declined or vice versa
+	    	Cursor cursor = db.query(getTableName(), new String[] { "timestamp", "accepted" }, "_id=?",
+	    			new String[] { String.valueOf(s.getId()) }, null, null, null);
+	    	if (cursor != null && cursor.getCount() > 0) {
+	    		cursor.moveToFirst();
+	    		long timestamp = cursor.getLong(0);
+	    		boolean wasAccepted = cursor.getInt(1) == 1;
 	    		
-	    		HashSet<String> dbTagSet = new HashSet<String>();
-	    		i = dbTagList.iterator();
-	    		while (i.hasNext()) {
-	    			Tag t = i.next();
-	    			dbTagSet.add(t.getName());
-	    		}
-	    		
-	    		//sample side
-	    		i = sTagList.iterator();
-	    		while (i.hasNext()) {
-	    			Tag t = i.next();
-	    			if (!dbTagSet.contains(t.getName())) {
-	    				tt.addTag(t.getVocabularyId(), t.getName(), s.getId());
+	    		numRows = db.update(getTableName(), values, "_id=?", new String[] { String.valueOf(s.getId()) });
+	    		if (numRows == 1 && wasAccepted != s.getAccepted().booleanValue()) {
+	    			if (wasAccepted) {
+	    				DailyStatsTable.addSamples(db, timestamp, -1, 1);
 	    			}
-	    		}
-	    		
-	    		//db side
-	    		i = dbTagList.iterator();
-	    		while (i.hasNext()) {
-	    			Tag t = i.next();
-	    			if (!sTagSet.contains(t.getName())) {
-	    				tt.removeTag(t.getVocabularyId(), t.getName(), s.getId());
+	    			else {
+	    				DailyStatsTable.addSamples(db, timestamp, 1, -1);
 	    			}
 	    		}
 	    	}
+	    	if (cursor != null) {
+	    		cursor.close();
+	    	}
+	    	
+	    	if (numRows == 1) {
+	    		new TagTable(this.getContext()).setTags(s.getId(), s.getTags(), tagChanges);
+	    		SampleSearchTable.index(db, s.getId());
+	    	}
+	    	db.setTransactionSuccessful();
+	    	committed = true;
 	    }
-		
+	    finally {
+	    	db.endTransaction();
+	    }
+	    if (committed) {
+	    	tagChanges.apply(getDatabaseName());
+	    }
+	    
 		return numRows == 1;
 	}
 	
-	public List<Sample> getSamplesOfDay(Calendar day) {
-		if (day.isSet(Calendar.YEAR) && day.isSet(Calendar.MONTH) && day.isSet(Calendar.DAY_OF_MONTH)) {
-			ArrayList<Sample> list = new ArrayList<Sample>();
-			SQLiteDatabase db = getDb();
-			long startOfDay = day.getTimeInMillis();
-			day.roll(Calendar.DAY_OF_MONTH, true);
-			long endOfDay = day.getTimeInMillis();
-			day.roll(Calendar.DAY_OF_MONTH, false);
-			
-			Cursor cursor = db.query(getTableName(), new String[] {"_id", "timestamp", "title", "description",
-				"accepted", "photoUri", "uptimeId"}, "timestamp between ? and ?",
-					new String[] { String.valueOf(startOfDay), String.valueOf(endOfDay) }, null, null, "timestamp DESC");
+	public List<Sample> getSamplesOfDay(long day) {
+		ArrayList<Sample> list = new ArrayList<Sample>();
+		SQLiteDatabase db = getDb();
+		
+		Cursor cursor = db.query(getTableName(), new String[] {"_id", "timestamp", "title", "description",
+			"accepted", "photoUri", "uptimeId"}, "day = ?",
+				new String[] { String.valueOf(day) }, null, null, "timestamp DESC");
+		
+		if (cursor != null && cursor.getCount() > 0) {
+			cursor.moveToFirst();
 			
-			if (cursor != null && cursor.getCount() > 0) {
-				cursor.moveToFirst();
-				
-				do {
-					Sample s = new Sample(cursor.getLong(0));
-					long timestamp = cursor.getLong(1);
-					s.setTimestamp(new Date(timestamp));
-					if (!cursor.isNull(2)) {
-						s.setTitle(cursor.getString(2));
-					}
-					if (!cursor.isNull(3)) {
-						s.setDescription(cursor.getString(3));
-					}
-					if (cursor.getInt(4) == 0) {
-						s.setAccepted(false);
-					}
-					else {
-						s.setAccepted(true);
-					}
-					if (!cursor.isNull(5)) {
-						s.setPhotoUri(cursor.getString(5));
-					}
-					if (!cursor.isNull(6)) {
-						s.setUptimeId(cursor.getLong(6));
-					}
-					list.add(s);
-				}
-				while (cursor.moveToNext());
-				cursor.close();
-				
-				return list;
+			do {
+				Sample s = readSample(cursor);
+				list.add(s);
 			}
+			while (cursor.moveToNext());
+		}
+		if (cursor != null) {
+			cursor.close();
 		}
 		
-		return null;
+		return list;
 	}
 	
 	public int getNumAcceptedToday() {
-		int count = 0;
-		
-		SQLiteDatabase db = getDb();
-		Calendar now = Calendar.getInstance();
-		int year = now.get(Calendar.YEAR);
-		int month = now.get(Calendar.MONTH);
-		int day = now.get(Calendar.DAY_OF_MONTH);
-		GregorianCalendar today = new GregorianCalendar(year, month, day);
-		long startOfDay = today.getTimeInMillis();
-		today.roll(Calendar.DAY_OF_MONTH, true);
-		long endOfDay = today.getTimeInMillis();
-		today.roll(Calendar.DAY_OF_MONTH, false);
-		
-		Cursor cursor = db.query(getTableName(), new String[] {"_id"}, "timestamp between ? and ? and accepted = 1",
-				new String[] { String.valueOf(startOfDay), String.valueOf(endOfDay) }, null, null, null);
-		
-		if (cursor != null && cursor.getCount() > 0) {
-			count = cursor.getCount();
-			cursor.close();
-		}
-		db.close();
-		
-		return count;
+		return getCount("day = ? AND accepted = 1", LocalDay.today());
 	}
 	
 	public int getSampleCountToday() {
-		int count = 0;
-		
-		SQLiteDatabase db = getDb();
-		Calendar now = Calendar.getInstance();
-		int year = now.get(Calendar.YEAR);
-		int month = now.get(Calendar.MONTH);
-		int day = now.get(Calendar.DAY_OF_MONTH);
-		GregorianCalendar today = new GregorianCalendar(year, month, day);
-		long startOfDay = today.getTimeInMillis();
-		today.roll(Calendar.DAY_OF_MONTH, true);
-		long endOfDay = today.getTimeInMillis();
-		today.roll(Calendar.DAY_OF_MONTH, false);
-		
-		Cursor cursor = db.query(getTableName(), new String[] {"accepted"}, "timestamp between ? and ?",
-				new String[] { String.valueOf(startOfDay), String.valueOf(endOfDay) }, null, null, null);
+		return getCount("day = ?", LocalDay.today());
+	}
+	
+	public double getRatioAcceptedToday() {
+		int count = getSampleCountToday();
 		
-		if (cursor != null && cursor.getCount() > 0) {
-			count = cursor.getCount();
-			cursor.close();
+		if (count == 0) {
+			return 0;
 		}
-		db.close();
 		
-		return count;
+		return (double)getNumAcceptedToday() / count;
 	}
 	
-	public double getRatioAcceptedToday() {
+	private int getCount(String where, long day) {
 		int count = 0;
-		int accepted = 0;
 		
 		SQLiteDatabase db = getDb();
-		Calendar now = Calendar.getInstance();
-		int year = now.get(Calendar.YEAR);
-		int month = now.get(Calendar.MONTH);
-		int day = now.get(Calendar.DAY_OF_MONTH);
-		GregorianCalendar today = new GregorianCalendar(year, month, day);
-		long startOfDay = today.getTimeInMillis();
-		today.roll(Calendar.DAY_OF_MONTH, true);
-		long endOfDay = today.getTimeInMillis();
-		today.roll(Calendar.DAY_OF_MONTH, false);
-		
-		Cursor cursor = db.query(getTableName(), new String[] {"accepted"}, "timestamp between ? and ?",
-				new String[] { String.valueOf(startOfDay), String.valueOf(endOfDay) }, null, null, null);
+		Cursor cursor = db.query(getTableName(), new String[] {"COUNT(*)"}, where,
+				new String[] { String.valueOf(day) }, null, null, null);
 		
 		if (cursor != null && cursor.getCount() > 0) {
 			cursor.moveToFirst();
-			
-			do {
-				count += 1;
-				if (cursor.getInt(0) == 1) {
-					accepted += 1;
-				}
-			}
-			while (cursor.moveToNext());
-			cursor.close();
+			count = cursor.getInt(0);
 		}
-		db.close();
-		
-		if (count == 0) {
-			return 0;
+		if (cursor != null) {
+			cursor.close();
 		}
 		
-		return accepted/count;
+		return count;
 	}
 
 }
@@ -36,6 +36,9 @@ public class SampleTagTable extends StorageHandler {
 			"FOREIGN KEY(sample_id) REFERENCES " + SampleTable.getTableName() + "(_id), " +
 			"FOREIGN KEY(tag_id) REFERENCES " + TagTable.getTableName() + "(_id)" +
 			")";
+	private static final String[] IDX_CREATE = {
+			"CREATE INDEX IF NOT EXISTS " + TBL_NAME + "_tag_sample_idx ON " + TBL_NAME + " (tag_id, sample_id)"
+	};
 	
 	public SampleTagTable(Context ctx) {
 		super(ctx);
@@ -47,6 +50,13 @@ public class SampleTagTable extends StorageHandler {
 	
 	public static void createTable(SQLiteDatabase db) {
 		db.execSQL(TBL_CREATE);
+		createIndexes(db);
+	}
+	
+	public static void createIndexes(SQLiteDatabase db) {
+		for (int i = 0; i < IDX_CREATE.length; i++) {
+			db.execSQL(IDX_CREATE[i]);
+		}
 	}
 	
 	public static void dropTable(SQLiteDatabase db) {
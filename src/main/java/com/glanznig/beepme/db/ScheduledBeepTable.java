@@ -20,13 +20,18 @@ http://beepme.yourexp.at
 
 package com.glanznig.beepme.db;
 
+import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.GregorianCalendar;
+import java.util.List;
+
+import com.glanznig.beepme.data.LatencyStatistics;
+import com.glanznig.beepme.helper.LocalDay;
 
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 public class ScheduledBeepTable extends StorageHandler {
 	
@@ -39,11 +44,28 @@ public class ScheduledBeepTable extends StorageHandler {
 			"timestamp INTEGER NOT NULL, " +
 			"created INTEGER NOT NULL, " +
 			"received INTEGER, " +
+			"displayed INTEGER, " +
+			"reacted INTEGER, " +
 			"updated INTEGER, " +
 			"status INTEGER NOT NULL, " +
 			"uptime_id INTEGER NOT NULL, " +
+			"day INTEGER, " +
 			"FOREIGN KEY(uptime_id) REFERENCES "+ UptimeTable.getTableName() +"(_id)" +
 			")";
+	private static final String[] IDX_CREATE = {
+			"CREATE INDEX IF NOT EXISTS " + TBL_NAME + "_timestamp_status_idx ON " + TBL_NAME + " (timestamp, status)",
+			"CREATE INDEX IF NOT EXISTS " + TBL_NAME + "_uptime_idx ON " + TBL_NAME + " (uptime_id)"
+	};
+	private static final String IDX_DAY_CREATE =
+			"CREATE INDEX IF NOT EXISTS " + TBL_NAME + "_day_status_idx ON " + TBL_NAME + " (day, status)";
+	
+	// compiled once per connection, see StatementCache
+	private static final String SQL_INSERT = "INSERT INTO " + TBL_NAME +
+			" (timestamp, created, status, uptime_id, day) VALUES (?, ?, 0, ?, ?)";
+	private static final String SQL_UPDATE_STATUS = "UPDATE " + TBL_NAME + " SET status=?, updated=? WHERE _id=?";
+	private static final String SQL_UPDATE_RECEIVED = "UPDATE " + TBL_NAME + " SET received=? WHERE _id=?";
+	private static final String SQL_UPDATE_DISPLAYED = "UPDATE " + TBL_NAME + " SET displayed=? WHERE _id=? AND displayed IS NULL";
+	private static final String SQL_UPDATE_REACTED = "UPDATE " + TBL_NAME + " SET reacted=? WHERE _id=? AND reacted IS NULL";
 	
 	public ScheduledBeepTable(Context ctx) {
 		super(ctx);
@@ -55,6 +77,21 @@ public class ScheduledBeepTable extends StorageHandler {
 	
 	public static void createTable(SQLiteDatabase db) {
 		db.execSQL(TBL_CREATE);
+		createIndexes(db);
+		db.execSQL(IDX_DAY_CREATE);
+	}
+	
+	// local day of the scheduled time, added in schema version 23
+	public static void addDayColumn(SQLiteDatabase db) {
+		db.execSQL("ALTER TABLE " + TBL_NAME + " ADD COLUMN day INTEGER");
+		db.execSQL("UPDATE " + TBL_NAME + " SET day = " + LocalDay.sql("timestamp"));
+		db.execSQL(IDX_DAY_CREATE);
+	}
+	
+	public static void createIndexes(SQLiteDatabase db) {
+		for (int i = 0; i < IDX_CREATE.length; i++) {
+			db.execSQL(IDX_CREATE[i]);
+		}
 	}
 	
 	public static void dropTable(SQLiteDatabase db) {
@@ -70,30 +107,103 @@ public class ScheduledBeepTable extends StorageHandler {
 		long beepId = 0L;
 		
 		if (time != 0L && uptimeId != 0L) {
+			SQLiteStatement stmt = getStatement(SQL_INSERT);
+			synchronized (stmt) {
+				stmt.bindLong(1, time);
+				stmt.bindLong(2, Calendar.getInstance().getTimeInMillis());
+				stmt.bindLong(3, uptimeId);
+				stmt.bindLong(4, LocalDay.of(time));
+				beepId = stmt.executeInsert();
+			}
+		}
+		
+		return beepId;
+	}
+	
+	/**
+	 * Inserts a whole plan of beeps in one transaction. The beeps are not armed, the
+	 * caller arms them one after another, see getNextPlannedBeep().
+	 */
+	public long[] addScheduledBeeps(List<Long> times, long uptimeId) {
+		long[] beepIds = new long[times.size()];
+		
+		if (uptimeId != 0L) {
 			SQLiteDatabase db = getDb();
-			 
-		    ContentValues values = new ContentValues();
-		    values.put("timestamp", time);
-		    values.put("created", Calendar.getInstance().getTimeInMillis());
-		    values.put("status", 0);
-		    values.put("uptime_id", uptimeId);
-		    beepId = db.insert(getTableName(), null, values);
-		    db.close();
+			long created = Calendar.getInstance().getTimeInMillis();
+			
+			// an own statement: waiting for the cached one while holding the transaction
+			// could deadlock with addScheduledBeep, which holds it while waiting for the connection
+			SQLiteStatement stmt = null;
+			db.beginTransaction();
+			try {
+				stmt = db.compileStatement(SQL_INSERT);
+				for (int i = 0; i < times.size(); i++) {
+					long time = times.get(i).longValue();
+					stmt.bindLong(1, time);
+					stmt.bindLong(2, created);
+					stmt.bindLong(3, uptimeId);
+					stmt.bindLong(4, LocalDay.of(time));
+					beepIds[i] = stmt.executeInsert();
+				}
+				db.setTransactionSuccessful();
+			}
+			finally {
+				if (stmt != null) {
+					stmt.close();
+				}
+				db.endTransaction();
+			}
+		}
+		
+		return beepIds;
+	}
+	
+	// earliest planned beep of the uptime that has not been armed yet, 0 if there is none
+	public long getNextPlannedBeep(long uptimeId) {
+		long beepId = 0L;
+		
+		SQLiteDatabase db = getDb();
+		Cursor cursor = db.query(getTableName(), new String[] {"_id"}, "uptime_id=? AND status=0",
+				new String[] { String.valueOf(uptimeId) }, null, null, "timestamp", "1");
+		
+		if (cursor != null && cursor.getCount() > 0) {
+			cursor.moveToFirst();
+			beepId = cursor.getLong(0);
+		}
+		if (cursor != null) {
+			cursor.close();
 		}
 		
 		return beepId;
 	}
 	
+	// planned beeps whose time passed before they could be armed are marked as expired
+	public int expirePlannedBeeps(long uptimeId, long now) {
+		ContentValues values = new ContentValues();
+		values.put("status", 2);
+		values.put("updated", now);
+		
+		return getDb().update(getTableName(), values, "uptime_id=? AND status=0 AND timestamp<?",
+				new String[] { String.valueOf(uptimeId), String.valueOf(now) });
+	}
+	
+	// drops the not yet armed rest of a plan when the beeper is paused
+	public int removePlannedBeeps(long uptimeId, long armedBeepId) {
+		return getDb().delete(getTableName(), "uptime_id=? AND status=0 AND _id<>?",
+				new String[] { String.valueOf(uptimeId), String.valueOf(armedBeepId) });
+	}
+	
 	public boolean updateStatus(long beepId, int status) {
 		int numRows = 0;
 		
 		if (beepId != 0L) {
-			SQLiteDatabase db = getDb();
-			ContentValues values = new ContentValues();
-			values.put("status", status);
-			values.put("updated", Calendar.getInstance().getTimeInMillis());
-			numRows = db.update(getTableName(), values, "_id=?", new String[] { String.valueOf(beepId) });
-			db.close();
+			SQLiteStatement stmt = getStatement(SQL_UPDATE_STATUS);
+			synchronized (stmt) {
+				stmt.bindLong(1, status);
+				stmt.bindLong(2, Calendar.getInstance().getTimeInMillis());
+				stmt.bindLong(3, beepId);
+				numRows = stmt.executeUpdateDelete();
+			}
 		}
 	
 		return numRows == 1;
@@ -103,16 +213,76 @@ public class ScheduledBeepTable extends StorageHandler {
 		int numRows = 0;
 		
 		if (beepId != 0L) {
-			SQLiteDatabase db = getDb();
-			ContentValues values = new ContentValues();
-			values.put("received", timestamp);
-			numRows = db.update(getTableName(), values, "_id=?", new String[] { String.valueOf(beepId) });
-			db.close();
+			SQLiteStatement stmt = getStatement(SQL_UPDATE_RECEIVED);
+			synchronized (stmt) {
+				stmt.bindLong(1, timestamp);
+				stmt.bindLong(2, beepId);
+				numRows = stmt.executeUpdateDelete();
+			}
 		}
 	
 		return numRows == 1;
 	}
 	
+	// time the beep screen was first drawn
+	public boolean displayedScheduledBeep(long beepId, long timestamp) {
+		return updateTime(SQL_UPDATE_DISPLAYED, beepId, timestamp);
+	}
+	
+	// time the user accepted or declined the beep
+	public boolean reactedScheduledBeep(long beepId, long timestamp) {
+		return updateTime(SQL_UPDATE_REACTED, beepId, timestamp);
+	}
+	
+	private boolean updateTime(String sql, long beepId, long timestamp) {
+		int numRows = 0;
+		
+		if (beepId != 0L) {
+			SQLiteStatement stmt = getStatement(sql);
+			synchronized (stmt) {
+				stmt.bindLong(1, timestamp);
+				stmt.bindLong(2, beepId);
+				numRows = stmt.executeUpdateDelete();
+			}
+		}
+		
+		return numRows == 1;
+	}
+	
+	/**
+	 * Latencies of all received beeps, one entry per day, most recent day first.
+	 */
+	public List<LatencyStatistics> getLatencyStatistics() {
+		ArrayList<LatencyStatistics> list = new ArrayList<LatencyStatistics>();
+		
+		SQLiteDatabase db = getDb();
+		Cursor cursor = db.query(getTableName(), new String[] { "day", "received - timestamp",
+				"displayed - received", "reacted - displayed" }, "received IS NOT NULL",
+				null, null, null, "day DESC");
+		
+		if (cursor != null && cursor.getCount() > 0) {
+			cursor.moveToFirst();
+			LatencyStatistics stats = null;
+			do {
+				long day = cursor.getLong(0);
+				if (stats == null || stats.getDay() != day) {
+					stats = new LatencyStatistics(day);
+					list.add(stats);
+				}
+				for (int measure = LatencyStatistics.DELIVERY; measure <= LatencyStatistics.REACTION; measure++) {
+					if (!cursor.isNull(measure + 1)) {
+						stats.add(measure, cursor.getLong(measure + 1));
+					}
+				}
+			} while (cursor.moveToNext());
+		}
+		if (cursor != null) {
+			cursor.close();
+		}
+		
+		return list;
+	}
+	
 	public int getStatus(long beepId) {
 		int status = 0;
 		
@@ -126,12 +296,31 @@ public class ScheduledBeepTable extends StorageHandler {
 				status = cursor.getInt(0);
 				cursor.close();
 			}
-			db.close();
 		}
 	
 		return status;
 	}
 	
+	public long getTimestamp(long beepId) {
+		long timestamp = 0L;
+		
+		if (beepId != 0L) {
+			SQLiteDatabase db = getDb();
+			Cursor cursor = db.query(getTableName(), new String[] {"timestamp"},
+					"_id=?", new String[] { String.valueOf(beepId) }, null, null, null);
+			
+			if (cursor != null && cursor.getCount() > 0) {
+				cursor.moveToFirst();
+				timestamp = cursor.getLong(0);
+			}
+			if (cursor != null) {
+				cursor.close();
+			}
+		}
+		
+		return timestamp;
+	}
+	
 	public boolean isExpired(long beepId) {
 		boolean expired = false;
 		
@@ -149,27 +338,40 @@ public class ScheduledBeepTable extends StorageHandler {
 				}
 				cursor.close();
 			}
-			db.close();
 		}
 	
 		return expired;
 	}
 	
+	// status of all beeps scheduled for the given local day, in the order they were scheduled
+	public List<Integer> getStatusesOfDay(long day) {
+		ArrayList<Integer> list = new ArrayList<Integer>();
+		
+		SQLiteDatabase db = getDb();
+		Cursor cursor = db.query(getTableName(), new String[] {"status"}, "day = ?",
+				new String[] { String.valueOf(day) }, null, null, "timestamp, _id");
+		
+		if (cursor != null && cursor.getCount() > 0) {
+			cursor.moveToFirst();
+			do {
+				list.add(Integer.valueOf(cursor.getInt(0)));
+			} while (cursor.moveToNext());
+		}
+		if (cursor != null) {
+			cursor.close();
+		}
+		
+		return list;
+	}
+	
 	public int getNumLastSubsequentCancelledBeeps() {
 		int count = 0;
 		
 		SQLiteDatabase db = getDb();
-		Calendar now = Calendar.getInstance();
-		int year = now.get(Calendar.YEAR);
-		int month = now.get(Calendar.MONTH);
-		int day = now.get(Calendar.DAY_OF_MONTH);
-		GregorianCalendar today = new GregorianCalendar(year, month, day);
-		long startOfDay = today.getTimeInMillis();
-		today.roll(Calendar.DAY_OF_MONTH, true);
-		long endOfDay = today.getTimeInMillis();
-		
-		Cursor cursor = db.query(getTableName(), new String[] {"status"}, "timestamp between ? and ?",
-				new String[] { String.valueOf(startOfDay), String.valueOf(endOfDay) }, null, null, null);
+		// planned beeps that are still in the future do not count
+		long now = System.currentTimeMillis();
+		Cursor cursor = db.query(getTableName(), new String[] {"status"}, "day = ? AND timestamp <= ?",
+				new String[] { String.valueOf(LocalDay.of(now)), String.valueOf(now) }, null, null, "timestamp, _id");
 		
 		if (cursor != null && cursor.getCount() > 0) {
 			cursor.moveToLast();
@@ -184,7 +386,6 @@ public class ScheduledBeepTable extends StorageHandler {
 			
 			cursor.close();
 		}
-		db.close();
 		
 		return count;
 	}
@@ -0,0 +1,63 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme.db;
+
+import java.util.HashMap;
+import java.util.Iterator;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+/**
+ * Compiled statements of one connection, keyed by their SQL. A statement is compiled the first
+ * time it is requested and reused afterwards. Statements are not thread-safe, callers have to
+ * synchronize on the statement while binding and executing it.
+ */
+public class StatementCache {
+	
+	private static final String TAG = "StatementCache";
+	
+	private final SQLiteDatabase db;
+	private final HashMap<String, SQLiteStatement> statements;
+	
+	public StatementCache(SQLiteDatabase db) {
+		this.db = db;
+		statements = new HashMap<String, SQLiteStatement>();
+	}
+	
+	public synchronized SQLiteStatement get(String sql) {
+		SQLiteStatement stmt = statements.get(sql);
+		if (stmt == null) {
+			stmt = db.compileStatement(sql);
+			statements.put(sql, stmt);
+		}
+		
+		return stmt;
+	}
+	
+	public synchronized void close() {
+		Iterator<SQLiteStatement> i = statements.values().iterator();
+		while (i.hasNext()) {
+			i.next().close();
+		}
+		statements.clear();
+	}
+}
@@ -26,6 +26,7 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 
 public class StorageHandler {
 	
@@ -33,7 +34,7 @@ public class StorageHandler {
 	
 	private static class DatabaseHelper extends SQLiteOpenHelper {
 		
-		protected static final int DB_VERSION = 19;
+		protected static final int DB_VERSION = 25;
 		
 		public DatabaseHelper(Context ctx, String dbName) {
 			super(ctx, dbName, null, DB_VERSION);
@@ -48,6 +49,8 @@ public class StorageHandler {
 			ScheduledBeepTable.createTable(db);
 			VocabularyTable.createTable(db);
 			TimerProfileTable.createTable(db);
+			DailyStatsTable.createTable(db);
+			SampleSearchTable.createTable(db);
 		}
 
 		@Override
@@ -105,6 +108,44 @@ public class StorageHandler {
 
                             db.execSQL("UPDATE " + VocabularyTable.getTableName() + " SET name='keywords' WHERE _id = 1");
                             break;
+
+                        case 19:
+                            // indexes for the per-day range queries and the tag reverse lookup
+                            SampleTable.createIndexes(db);
+                            TagTable.createIndexes(db);
+                            SampleTagTable.createIndexes(db);
+                            UptimeTable.createIndexes(db);
+                            ScheduledBeepTable.createIndexes(db);
+                            db.execSQL("ANALYZE");
+                            break;
+
+                        case 20:
+                            DailyStatsTable.createTable(db);
+                            DailyStatsTable.rebuild(db);
+                            break;
+
+                        case 21:
+                            SampleSearchTable.createTable(db);
+                            SampleSearchTable.rebuild(db);
+                            break;
+
+                        case 22:
+                            SampleTable.addDayColumn(db);
+                            UptimeTable.addDayColumn(db);
+                            ScheduledBeepTable.addDayColumn(db);
+                            break;
+
+                        case 23:
+                            db.execSQL("ALTER TABLE " + TimerProfileTable.getTableName() +
+                                    " ADD COLUMN intervalDistribution INTEGER NOT NULL DEFAULT 0");
+                            break;
+
+                        case 24:
+                            db.execSQL("ALTER TABLE " + ScheduledBeepTable.getTableName() +
+                                    " ADD COLUMN displayed INTEGER");
+                            db.execSQL("ALTER TABLE " + ScheduledBeepTable.getTableName() +
+                                    " ADD COLUMN reacted INTEGER");
+                            break;
                     }
                 }
             }
@@ -118,6 +159,8 @@ public class StorageHandler {
 			ScheduledBeepTable.dropTable(db);
 			VocabularyTable.dropTable(db);
 			TimerProfileTable.dropTable(db);
+			DailyStatsTable.dropTable(db);
+			SampleSearchTable.dropTable(db);
 		}
 		
 		public void truncateTables() {
@@ -126,8 +169,8 @@ public class StorageHandler {
 		}
 	}
 	
-	private static DatabaseHelper dbHelperProduction = null;
-	private static DatabaseHelper dbHelperTestMode = null;
+	private static ConnectionManager connProduction = null;
+	private static ConnectionManager connTestMode = null;
 	private Context ctx = null;
     public static final String DB_OLD_NAME = "beepme"; // can be removed in future versions
 	private static final String DB_NAME_PRODUCTION = "beepme";
@@ -137,33 +180,54 @@ public class StorageHandler {
 		this.ctx = ctx;
 		BeeperApp app = (BeeperApp)ctx.getApplicationContext();
 		
-		if (app.getPreferences().isTestMode()) {
-			if (dbHelperTestMode == null) {
-				dbHelperTestMode = new DatabaseHelper(ctx.getApplicationContext(), DB_NAME_TESTMODE);
+		synchronized (StorageHandler.class) {
+			if (app.getPreferences().isTestMode()) {
+				if (connTestMode == null) {
+					connTestMode = new ConnectionManager(new DatabaseHelper(ctx.getApplicationContext(), DB_NAME_TESTMODE));
+				}
 			}
-		}
-		else {
-			if (dbHelperProduction == null) {
-				dbHelperProduction = new DatabaseHelper(ctx.getApplicationContext(), DB_NAME_PRODUCTION);
+			else {
+				if (connProduction == null) {
+					connProduction = new ConnectionManager(new DatabaseHelper(ctx.getApplicationContext(), DB_NAME_PRODUCTION));
+				}
 			}
 		}
 	}
 	
-	public SQLiteDatabase getDb() {
+	private ConnectionManager getConnectionManager() {
 		BeeperApp app = (BeeperApp)ctx.getApplicationContext();
 		if (app.getPreferences().isTestMode()) {
-			return dbHelperTestMode.getWritableDatabase();
+			return connTestMode;
 		}
-		return dbHelperProduction.getWritableDatabase();
+		return connProduction;
+	}
+	
+	// returns the shared connection, do not close it after use
+	public SQLiteDatabase getDb() {
+		return getConnectionManager().getConnection();
+	}
+	
+	// returns a compiled statement of the shared connection, synchronize on it while in use
+	public SQLiteStatement getStatement(String sql) {
+		return getConnectionManager().getStatement(sql);
 	}
 	
 	public void truncateTables() {
-		BeeperApp app = (BeeperApp)ctx.getApplicationContext();
-		if (app.getPreferences().isTestMode()) {
-			dbHelperTestMode.truncateTables();
+		((DatabaseHelper)getConnectionManager().getHelper()).truncateTables();
+		TagIndex.invalidate(getDatabaseName());
+	}
+	
+	public void checkpoint() {
+		getConnectionManager().checkpoint();
+	}
+	
+	// close all shared connections, e.g. before database files are renamed
+	public static synchronized void closeConnections() {
+		if (connProduction != null) {
+			connProduction.close();
 		}
-		else {
-			dbHelperProduction.truncateTables();
+		if (connTestMode != null) {
+			connTestMode.close();
 		}
 	}
 	
@@ -0,0 +1,203 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.glanznig.beepme.data.Tag;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+/**
+ * In-memory index of the tag names of one vocabulary together with the number of samples
+ * using them. It is loaded once in the background and then kept up to date by TagTable,
+ * so that keyword suggestions do not need to query the database.
+ */
+public class TagIndex {
+	
+	private static final String TAG = "TagIndex";
+	
+	// time to wait for the initial load before suggestions are given without the index
+	private static final long LOAD_TIMEOUT = 500;
+	
+	private static final HashMap<String, TagIndex> indexes = new HashMap<String, TagIndex>();
+	
+	private final long vocabularyId;
+	// tag name -> usage count, sorted by name for prefix lookups
+	private final TreeMap<String, Integer> tags;
+	private final CountDownLatch loaded;
+	
+	private TagIndex(long vocabularyId) {
+		this.vocabularyId = vocabularyId;
+		tags = new TreeMap<String, Integer>();
+		loaded = new CountDownLatch(1);
+	}
+	
+	// returns the index of the vocabulary in the current database, loading starts on first use
+	public static TagIndex get(Context ctx, long vocabularyId) {
+		final TagTable tagTbl = new TagTable(ctx.getApplicationContext());
+		String key = getKey(tagTbl.getDatabaseName(), vocabularyId);
+		final TagIndex index;
+		
+		synchronized (indexes) {
+			if (indexes.containsKey(key)) {
+				return indexes.get(key);
+			}
+			index = new TagIndex(vocabularyId);
+			indexes.put(key, index);
+		}
+		
+		new Thread(new Runnable() {
+			public void run() {
+				index.load(tagTbl.getDb());
+			}
+		}).start();
+		
+		return index;
+	}
+	
+	// drop all indexes of a database, e.g. if its tables are recreated
+	public static void invalidate(String dbName) {
+		synchronized (indexes) {
+			Iterator<String> i = indexes.keySet().iterator();
+			while (i.hasNext()) {
+				if (i.next().startsWith(dbName + ":")) {
+					i.remove();
+				}
+			}
+		}
+	}
+	
+	// called by TagTable after a tag was attached to (delta 1) or detached from (delta -1) a sample
+	static void update(String dbName, long vocabularyId, String name, int delta) {
+		TagIndex index;
+		synchronized (indexes) {
+			index = indexes.get(getKey(dbName, vocabularyId));
+		}
+		
+		// not loaded yet, changes are part of the initial load
+		if (index != null) {
+			index.change(name, delta);
+		}
+	}
+	
+	private static String getKey(String dbName, long vocabularyId) {
+		return dbName + ":" + vocabularyId;
+	}
+	
+	private void load(SQLiteDatabase db) {
+		long start = System.currentTimeMillis();
+		
+		Cursor cursor = db.rawQuery("SELECT t.name, COUNT(st.sample_id) FROM " + TagTable.getTableName() + " t " +
+				"LEFT JOIN " + SampleTagTable.getTableName() + " st ON st.tag_id = t._id " +
+				"WHERE t.vocabulary_id = ? GROUP BY t._id", new String[] { String.valueOf(vocabularyId) });
+		
+		synchronized (this) {
+			if (cursor != null && cursor.getCount() > 0) {
+				cursor.moveToFirst();
+				do {
+					tags.put(cursor.getString(0), Integer.valueOf(cursor.getInt(1)));
+				}
+				while (cursor.moveToNext());
+			}
+		}
+		if (cursor != null) {
+			cursor.close();
+		}
+		
+		loaded.countDown();
+		Log.i(TAG, "loaded " + tags.size() + " tags of vocabulary " + vocabularyId + " in " +
+				(System.currentTimeMillis() - start) + " ms");
+	}
+	
+	private synchronized void change(String name, int delta) {
+		Integer count = tags.get(name);
+		int newCount = delta;
+		if (count != null) {
+			newCount += count.intValue();
+		}
+		
+		if (newCount > 0) {
+			tags.put(name, Integer.valueOf(newCount));
+		}
+		else {
+			tags.remove(name);
+		}
+	}
+	
+	/**
+	 * Returns the tags starting with the given prefix, most used tags first.
+	 * Returns null if the index could not be loaded in time.
+	 */
+	public List<Tag> getTags(String prefix) {
+		try {
+			if (!loaded.await(LOAD_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				return null;
+			}
+		}
+		catch (InterruptedException ie) {
+			return null;
+		}
+		
+		final HashMap<String, Integer> matches = new HashMap<String, Integer>();
+		String from = prefix.toLowerCase(Locale.getDefault());
+		synchronized (this) {
+			// all keys starting with prefix are sorted between prefix and prefix + highest char
+			SortedMap<String, Integer> range = tags.subMap(from, from + Character.MAX_VALUE);
+			matches.putAll(range);
+		}
+		
+		ArrayList<String> names = new ArrayList<String>(matches.keySet());
+		Collections.sort(names, new Comparator<String>() {
+			public int compare(String lhs, String rhs) {
+				int diff = matches.get(rhs).intValue() - matches.get(lhs).intValue();
+				if (diff != 0) {
+					return diff;
+				}
+				return lhs.compareTo(rhs);
+			}
+		});
+		
+		ArrayList<Tag> list = new ArrayList<Tag>();
+		Iterator<String> i = names.iterator();
+		while (i.hasNext()) {
+			Tag t = new Tag();
+			t.setName(i.next());
+			t.setVocabularyId(vocabularyId);
+			list.add(t);
+		}
+		
+		return list;
+	}
+}
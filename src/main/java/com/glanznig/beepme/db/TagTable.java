@@ -21,6 +21,8 @@ http://beepme.yourexp.at
 package com.glanznig.beepme.db;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 
@@ -31,6 +33,8 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 
 public class TagTable extends StorageHandler {
@@ -45,6 +49,9 @@ public class TagTable extends StorageHandler {
 			"vocabulary_id INTEGER NOT NULL, " +
 			"FOREIGN KEY(vocabulary_id) REFERENCES " + VocabularyTable.getTableName() + "(_id)" +
 			")";
+	private static final String[] IDX_CREATE = {
+			"CREATE INDEX IF NOT EXISTS " + TBL_NAME + "_vocabulary_name_idx ON " + TBL_NAME + " (vocabulary_id, name)"
+	};
 	
 	public TagTable(Context ctx) {
 		super(ctx);
@@ -56,10 +63,17 @@ public class TagTable extends StorageHandler {
 	
 	public static void createTable(SQLiteDatabase db) {
 		db.execSQL(TBL_CREATE);
+		createIndexes(db);
 		
 		//createMoodEntries(db);
 	}
 	
+	public static void createIndexes(SQLiteDatabase db) {
+		for (int i = 0; i < IDX_CREATE.length; i++) {
+			db.execSQL(IDX_CREATE[i]);
+		}
+	}
+	
 	public static void dropTable(SQLiteDatabase db) {
 		db.execSQL("DROP TABLE IF EXISTS " + TBL_NAME);
 	}
@@ -489,12 +503,12 @@ public class TagTable extends StorageHandler {
 		    }
 		    
 		    db.endTransaction();
-		    db.close();
 		    
 		    if (success) {
 		    	Tag t = new Tag(tagId);
 		    	t.setName(tagName.toLowerCase(Locale.getDefault()));
 		    	t.setVocabularyId(vocabularyId);
+		    	TagIndex.update(getDatabaseName(), vocabularyId, t.getName(), 1);
 		    	
 		    	return t;
 		    }
@@ -545,7 +559,10 @@ public class TagTable extends StorageHandler {
 			}
 			
 			db.endTransaction();
-			db.close();
+			
+			if (success) {
+				TagIndex.update(getDatabaseName(), vocabularyId, tagName.toLowerCase(Locale.getDefault()), -1);
+			}
 		}
 		else {
 			success = false;
@@ -554,11 +571,163 @@ public class TagTable extends StorageHandler {
 		return success;
 	}
 	
+	/**
+	 * Changes of tag usage for the in-memory {@link TagIndex}. They must only be applied
+	 * after the outermost transaction they were made in has been committed.
+	 */
+	static class IndexChanges {
+		private final ArrayList<Tag> attached = new ArrayList<Tag>();
+		private final ArrayList<Tag> detached = new ArrayList<Tag>();
+		
+		void apply(String dbName) {
+			Iterator<Tag> i = attached.iterator();
+			while (i.hasNext()) {
+				Tag t = i.next();
+				TagIndex.update(dbName, t.getVocabularyId(), t.getName(), 1);
+			}
+			i = detached.iterator();
+			while (i.hasNext()) {
+				Tag t = i.next();
+				TagIndex.update(dbName, t.getVocabularyId(), t.getName(), -1);
+			}
+		}
+	}
+	
+	// replaces all tags of the sample with the given tags, returns the tags with their ids.
+	// Meant to run inside the caller's transaction: errors are thrown, so that the caller's
+	// transaction is not committed, and the index changes are only recorded in changes.
+	List<Tag> setTags(long sampleId, List<Tag> tags, IndexChanges changes) {
+		ArrayList<Tag> result = new ArrayList<Tag>();
+		
+		if (sampleId != 0L && tags != null) {
+			SQLiteDatabase db = getDb();
+			SQLiteStatement selectTag = null;
+			SQLiteStatement insertTag = null;
+			SQLiteStatement insertRelation = null;
+			ArrayList<Tag> attached = new ArrayList<Tag>();
+			ArrayList<Tag> detached = new ArrayList<Tag>();
+			db.beginTransaction();
+			
+			try {
+				selectTag = db.compileStatement("SELECT _id FROM " + getTableName() + " WHERE name=? AND vocabulary_id=?");
+				insertTag = db.compileStatement("INSERT INTO " + getTableName() + " (name, vocabulary_id) VALUES (?, ?)");
+				insertRelation = db.compileStatement("INSERT OR IGNORE INTO " + SampleTagTable.getTableName() +
+						" (sample_id, tag_id) VALUES (?, ?)");
+				
+				// tags currently attached to the sample
+				HashSet<Long> removedIds = new HashSet<Long>();
+				Cursor cursor = db.query(SampleTagTable.getTableName(), new String[] { "tag_id" }, "sample_id=?",
+						new String[] { String.valueOf(sampleId) }, null, null, null);
+				if (cursor != null && cursor.getCount() > 0) {
+					cursor.moveToFirst();
+					do {
+						removedIds.add(Long.valueOf(cursor.getLong(0)));
+					}
+					while (cursor.moveToNext());
+				}
+				if (cursor != null) {
+					cursor.close();
+				}
+				
+				// the same tag may be given twice (also differing in case only)
+				HashSet<Long> handledIds = new HashSet<Long>();
+				Iterator<Tag> i = tags.iterator();
+				while (i.hasNext()) {
+					Tag t = i.next();
+					if (t.getName() == null) {
+						continue;
+					}
+					String name = t.getName().toLowerCase(Locale.getDefault());
+					
+					long tagId;
+					selectTag.bindString(1, name);
+					selectTag.bindLong(2, t.getVocabularyId());
+					try {
+						tagId = selectTag.simpleQueryForLong();
+					}
+					catch (SQLiteDoneException sde) {
+						insertTag.bindString(1, name);
+						insertTag.bindLong(2, t.getVocabularyId());
+						tagId = insertTag.executeInsert();
+					}
+					if (!handledIds.add(Long.valueOf(tagId))) {
+						continue;
+					}
+					
+					insertRelation.bindLong(1, sampleId);
+					insertRelation.bindLong(2, tagId);
+					insertRelation.executeInsert();
+					
+					Tag created = new Tag(tagId);
+					created.setName(name);
+					created.setVocabularyId(t.getVocabularyId());
+					result.add(created);
+					
+					if (!removedIds.remove(Long.valueOf(tagId))) {
+						attached.add(created);
+					}
+				}
+				
+				// detach the remaining tags and delete them if no other sample uses them
+				if (removedIds.size() > 0) {
+					StringBuilder ids = new StringBuilder();
+					Iterator<Long> r = removedIds.iterator();
+					while (r.hasNext()) {
+						if (ids.length() > 0) {
+							ids.append(",");
+						}
+						ids.append(r.next().longValue());
+					}
+					
+					cursor = db.query(getTableName(), new String[] { "name", "vocabulary_id" }, "_id IN (" + ids + ")",
+							null, null, null, null);
+					if (cursor != null && cursor.getCount() > 0) {
+						cursor.moveToFirst();
+						do {
+							Tag t = new Tag();
+							t.setName(cursor.getString(0));
+							t.setVocabularyId(cursor.getLong(1));
+							detached.add(t);
+						}
+						while (cursor.moveToNext());
+					}
+					if (cursor != null) {
+						cursor.close();
+					}
+					
+					db.execSQL("DELETE FROM " + SampleTagTable.getTableName() + " WHERE sample_id=? AND tag_id IN (" + ids + ")",
+							new Object[] { Long.valueOf(sampleId) });
+					db.execSQL("DELETE FROM " + getTableName() + " WHERE _id IN (" + ids + ") AND NOT EXISTS " +
+							"(SELECT 1 FROM " + SampleTagTable.getTableName() + " st WHERE st.tag_id = " + getTableName() + "._id)");
+				}
+				
+				db.setTransactionSuccessful();
+			}
+			finally {
+				if (selectTag != null) {
+					selectTag.close();
+				}
+				if (insertTag != null) {
+					insertTag.close();
+				}
+				if (insertRelation != null) {
+					insertRelation.close();
+				}
+				db.endTransaction();
+			}
+			
+			changes.attached.addAll(attached);
+			changes.detached.addAll(detached);
+		}
+		
+		return result;
+	}
+	
 	public List<Tag> getTags(long vocabularyId, String search) {
 		ArrayList<Tag> list = new ArrayList<Tag>();
 		SQLiteDatabase db = getDb();
 		Cursor cursor = db.query(getTableName(), new String[] { "_id", "name" },
-				"name like '" + search + "%' AND vocabulary_id=?", new String[] { String.valueOf(vocabularyId) },
+				"name like ? AND vocabulary_id=?", new String[] { search + "%", String.valueOf(vocabularyId) },
 				null, null, "name");
 		
 		if (cursor != null && cursor.getCount() > 0) {
@@ -572,7 +741,6 @@ public class TagTable extends StorageHandler {
 			while (cursor.moveToNext());
 			cursor.close();
 		}
-		db.close();
 		
 		return list;
 	}
@@ -594,7 +762,6 @@ public class TagTable extends StorageHandler {
 			while (cursor.moveToNext());
 			cursor.close();
 		}
-		db.close();
 		
 		return list;
 	}
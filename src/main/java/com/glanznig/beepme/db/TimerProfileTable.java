@@ -45,7 +45,8 @@ private static final String TAG = "TimerProfileTable";
 			"minBeepInterval INTEGER NOT NULL, " +
 			"minSizeBeepInterval INTEGER NOT NULL, " +
 			"uptimeCountMoveToAverage INTEGER NOT NULL, " +
-			"numCancelledBeepsMoveToAverage INTEGER NOT NULL" +
+			"numCancelledBeepsMoveToAverage INTEGER NOT NULL, " +
+			"intervalDistribution INTEGER NOT NULL DEFAULT 0" +
 			")";
 
 	public TimerProfileTable(Context ctx) {
@@ -89,6 +90,7 @@ private static final String TAG = "TimerProfileTable";
 		values.put("minSizeBeepInterval", 60); //1 min
 		values.put("uptimeCountMoveToAverage", 3);
 		values.put("numCancelledBeepsMoveToAverage", 2);
+		values.put("intervalDistribution", TimerProfile.DISTRIBUTION_SPLIT_UNIFORM);
 		db.insert(TBL_NAME, null, values);
 		
 		/*values = new ContentValues();
@@ -110,7 +112,7 @@ private static final String TAG = "TimerProfileTable";
 		
 		Cursor cursor = db.query(TBL_NAME, new String[] {"_id", "name", "minUptimeDuration", "avgBeepInterval",
 				"maxBeepInterval", "minBeepInterval", "uptimeCountMoveToAverage",
-				"numCancelledBeepsMoveToAverage", "minSizeBeepInterval"},
+				"numCancelledBeepsMoveToAverage", "minSizeBeepInterval", "intervalDistribution"},
 				"_id=?", new String[] { String.valueOf(id) }, null, null, null);
 		
 		if (cursor != null && cursor.getCount() > 0) {
@@ -125,9 +127,9 @@ private static final String TAG = "TimerProfileTable";
 			tp.setUptimeCountMoveToAverage(cursor.getInt(6));
 			tp.setNumCancelledBeepsMoveToAverage(cursor.getInt(7));
 			tp.setMinSizeBeepInterval(cursor.getInt(8));
+			tp.setIntervalDistribution(cursor.getInt(9));
 		}
 		cursor.close();
-		db.close();
 		
 		return tp;
 	}
@@ -138,7 +140,7 @@ private static final String TAG = "TimerProfileTable";
 		
 		Cursor cursor = db.query(TBL_NAME, new String[] {"_id", "name", "minUptimeDuration", "avgBeepInterval",
 				"maxBeepInterval", "minBeepInterval", "uptimeCountMoveToAverage",
-				"numCancelledBeepsMoveToAverage", "minSizeBeepInterval"},
+				"numCancelledBeepsMoveToAverage", "minSizeBeepInterval", "intervalDistribution"},
 				null, null, null, null, null);
 		
 		if (cursor != null && cursor.getCount() > 0) {
@@ -154,13 +156,13 @@ private static final String TAG = "TimerProfileTable";
 				tp.setUptimeCountMoveToAverage(cursor.getInt(6));
 				tp.setNumCancelledBeepsMoveToAverage(cursor.getInt(7));
 				tp.setMinSizeBeepInterval(cursor.getInt(8));
+				tp.setIntervalDistribution(cursor.getInt(9));
 				
 				profileList.add(tp);
 			}
 			while(cursor.moveToNext());
 		}
 		cursor.close();
-		db.close();
 		
 		return profileList;
 	}
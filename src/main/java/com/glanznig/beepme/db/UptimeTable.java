@@ -21,18 +21,18 @@ http://beepme.yourexp.at
 package com.glanznig.beepme.db;
 
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
-import java.util.GregorianCalendar;
 import java.util.List;
 
 import com.glanznig.beepme.data.TimerProfile;
 import com.glanznig.beepme.data.Uptime;
+import com.glanznig.beepme.helper.LocalDay;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
 
 public class UptimeTable extends StorageHandler {
 	
@@ -45,8 +45,18 @@ public class UptimeTable extends StorageHandler {
 			"start INTEGER NOT NULL UNIQUE, " +
 			"end INTEGER UNIQUE, " +
 			"timerProfileId INTEGER, " + //add NOT NULL
+			"day INTEGER, " +
 			"FOREIGN KEY (timerProfileId) REFERENCES "  + TimerProfileTable.getTableName() + " (_id)" +
 			")";
+	private static final String[] IDX_CREATE = {
+			"CREATE INDEX IF NOT EXISTS " + TBL_NAME + "_start_end_idx ON " + TBL_NAME + " (start, end)",
+			"CREATE INDEX IF NOT EXISTS " + TBL_NAME + "_end_start_idx ON " + TBL_NAME + " (end, start)"
+	};
+	private static final String IDX_DAY_CREATE =
+			"CREATE INDEX IF NOT EXISTS " + TBL_NAME + "_day_idx ON " + TBL_NAME + " (day)";
+	private static final String SQL_INSERT = "INSERT INTO " + TBL_NAME + " (start, timerProfileId, day) VALUES (?, ?, ?)";
+	private static final String SQL_SELECT_START = "SELECT start FROM " + TBL_NAME + " WHERE _id=?";
+	private static final String SQL_UPDATE_END = "UPDATE " + TBL_NAME + " SET end=? WHERE _id=? AND end IS NULL";
 	
 	private TimerProfile timerProfile;
 	
@@ -61,6 +71,21 @@ public class UptimeTable extends StorageHandler {
 	
 	public static void createTable(SQLiteDatabase db) {
 		db.execSQL(TBL_CREATE);
+		createIndexes(db);
+		db.execSQL(IDX_DAY_CREATE);
+	}
+	
+	// local day of the start of an uptime, added in schema version 23
+	public static void addDayColumn(SQLiteDatabase db) {
+		db.execSQL("ALTER TABLE " + TBL_NAME + " ADD COLUMN day INTEGER");
+		db.execSQL("UPDATE " + TBL_NAME + " SET day = " + LocalDay.sql("start"));
+		db.execSQL(IDX_DAY_CREATE);
+	}
+	
+	public static void createIndexes(SQLiteDatabase db) {
+		for (int i = 0; i < IDX_CREATE.length; i++) {
+			db.execSQL(IDX_CREATE[i]);
+		}
 	}
 	
 	public static void dropTable(SQLiteDatabase db) {
@@ -74,13 +99,14 @@ public class UptimeTable extends StorageHandler {
 	
 	public long startUptime(Date start) {
 		if (start != null) {
-			SQLiteDatabase db = getDb();
-			ContentValues values = new ContentValues();
-			values.put("start", start.getTime());
-			values.put("timerProfileId", timerProfile.getId());
-			
-			long id = db.insert(getTableName(), null, values);
-			db.close();
+			long id;
+			SQLiteStatement stmt = getStatement(SQL_INSERT);
+			synchronized (stmt) {
+				stmt.bindLong(1, start.getTime());
+				stmt.bindLong(2, timerProfile.getId());
+				stmt.bindLong(3, LocalDay.of(start.getTime()));
+				id = stmt.executeInsert();
+			}
 			
 			return id;
 		}
@@ -95,12 +121,15 @@ public class UptimeTable extends StorageHandler {
 		if (uptimeId != 0L && end != null) {
 			SQLiteDatabase db = getDb();
 			
-			Cursor cursor = db.query(getTableName(), new String[] { "start" },
-					"_id = ?", new String[] { String.valueOf(uptimeId) }, null, null, null);
-			if (cursor != null && cursor.getCount() > 0) {
-				cursor.moveToFirst();
-				startTime = cursor.getLong(0);
-				cursor.close();
+			SQLiteStatement select = getStatement(SQL_SELECT_START);
+			synchronized (select) {
+				select.bindLong(1, uptimeId);
+				try {
+					startTime = select.simpleQueryForLong();
+				}
+				catch (SQLiteDoneException sde) {
+					startTime = 0L;
+				}
 			}
 			
 			//remove very short uptimes from statistics
@@ -109,9 +138,22 @@ public class UptimeTable extends StorageHandler {
 				minUptimeDuration = timerProfile.getMinUptimeDuration();
 			}
 			if (startTime != 0L && end.getTime() - startTime > minUptimeDuration * 1000) {
-				ContentValues values = new ContentValues();
-				values.put("end", end.getTime());
-				numRows = db.update(getTableName(), values, "_id=?", new String[] { String.valueOf(uptimeId) });
+				db.beginTransaction();
+				try {
+					SQLiteStatement update = getStatement(SQL_UPDATE_END);
+					synchronized (update) {
+						update.bindLong(1, end.getTime());
+						update.bindLong(2, uptimeId);
+						numRows = update.executeUpdateDelete();
+					}
+					if (numRows == 1) {
+						DailyStatsTable.addUptime(db, startTime, end.getTime());
+					}
+					db.setTransactionSuccessful();
+				}
+				finally {
+					db.endTransaction();
+				}
 			}
 			else if (startTime != 0L) {
 				numRows = db.delete(getTableName(), "_id = ?", new String[] { String.valueOf(uptimeId) });
@@ -119,7 +161,6 @@ public class UptimeTable extends StorageHandler {
 					db.delete(ScheduledBeepTable.getTableName(), "uptime_id = ?", new String[] { String.valueOf(uptimeId) });
 				}
 			}
-		    db.close();
 		}
 		
 		return numRows == 1;
@@ -140,10 +181,8 @@ public class UptimeTable extends StorageHandler {
 			}
 			u.setTimerProfileId(cursor.getInt(3));
 			cursor.close();
-			db.close();
 			return u;
 		}
-		db.close();
 		
 		return null;
 	}
@@ -170,50 +209,42 @@ public class UptimeTable extends StorageHandler {
 			while (cursor.moveToNext());
 			cursor.close();
 		}
-		db.close();
 		
 		return list;
 	}
 	
-	public List<Uptime> getUptimesOfDay(Calendar day) {
-		// all uptimes that BEGIN or END on that day
-		if (day.isSet(Calendar.YEAR) && day.isSet(Calendar.MONTH) && day.isSet(Calendar.DAY_OF_MONTH)) {
-			ArrayList<Uptime> list = new ArrayList<Uptime>();
-			
-			// get start and end timestamp of day
-			long startOfDay = day.getTimeInMillis();
-			day.roll(Calendar.DAY_OF_MONTH, true);
-			long endOfDay = day.getTimeInMillis();
-			day.roll(Calendar.DAY_OF_MONTH, false);
-			
-			SQLiteDatabase db = getDb();
-			
-			// distinct start values
-			Cursor cursor = db.query(true, getTableName(), new String[] { "_id", "start", "end", "timerProfileId" },
-					"start between ? and ? OR end between ? and ?", new String[] { String.valueOf(startOfDay),
-					String.valueOf(endOfDay), String.valueOf(startOfDay),
-					String.valueOf(endOfDay) }, "start", null, "start DESC", null);
-			
-			if (cursor != null && cursor.getCount() > 0) {
-				cursor.moveToFirst();
-				do {
-					Uptime u = new Uptime(cursor.getLong(0));
-					u.setStart(new Date(cursor.getLong(1)));
-					if (!cursor.isNull(2)) {
-						u.setEnd(new Date(cursor.getLong(2)));
-					}
-					u.setTimerProfileId(cursor.getInt(3));
-					
-					list.add(u);
+	public List<Uptime> getUptimesOfDay(long day) {
+		// all uptimes that BEGIN (day key) or END on that local day
+		ArrayList<Uptime> list = new ArrayList<Uptime>();
+		
+		// get start and end timestamp of day
+		long startOfDay = LocalDay.startOf(day);
+		long endOfDay = LocalDay.startOf(day + 1) - 1;
+		
+		SQLiteDatabase db = getDb();
+		
+		// distinct start values
+		Cursor cursor = db.query(true, getTableName(), new String[] { "_id", "start", "end", "timerProfileId" },
+				"day = ? OR end between ? and ?", new String[] { String.valueOf(day),
+				String.valueOf(startOfDay), String.valueOf(endOfDay) }, "start", null, "start DESC", null);
+		
+		if (cursor != null && cursor.getCount() > 0) {
+			cursor.moveToFirst();
+			do {
+				Uptime u = new Uptime(cursor.getLong(0));
+				u.setStart(new Date(cursor.getLong(1)));
+				if (!cursor.isNull(2)) {
+					u.setEnd(new Date(cursor.getLong(2)));
 				}
-				while (cursor.moveToNext());
-				cursor.close();
+				u.setTimerProfileId(cursor.getInt(3));
+				
+				list.add(u);
 			}
-			db.close();
-			
-			return list;
+			while (cursor.moveToNext());
+			cursor.close();
 		}
-		return null;
+		
+		return list;
 	}
 	
 	public long getUptimeDurToday() {
@@ -232,18 +263,9 @@ public class UptimeTable extends StorageHandler {
 		long duration = 0L;
 		int count = 0;
 		SQLiteDatabase db = getDb();
-		Calendar now = Calendar.getInstance();
-		int year = now.get(Calendar.YEAR);
-		int month = now.get(Calendar.MONTH);
-		int day = now.get(Calendar.DAY_OF_MONTH);
-		GregorianCalendar today = new GregorianCalendar(year, month, day);
-		long startOfDay = today.getTimeInMillis();
-		today.roll(Calendar.DAY_OF_MONTH, true);
-		long endOfDay = today.getTimeInMillis();
-		today.roll(Calendar.DAY_OF_MONTH, false);
 		
 		Cursor cursor = db.query(getTableName(), new String[] { "start", "end" },
-				"start between ? and ?", new String[] { String.valueOf(startOfDay), String.valueOf(endOfDay) }, null, null, null);
+				"day = ?", new String[] { String.valueOf(LocalDay.today()) }, null, null, "start");
 		
 		if (cursor != null && cursor.getCount() > 0) {
 			cursor.moveToFirst();
@@ -256,7 +278,7 @@ public class UptimeTable extends StorageHandler {
 				//indicate the currently running uptime interval, include it with end time "now".
 				//if the currently running uptime interval's duration is larger than TimerProfile.MIN_UPTIME_DURATION
 				else if (cursor.isNull(1) && cursor.isLast()) {
-					long nowTime = Calendar.getInstance().getTimeInMillis();
+					long nowTime = System.currentTimeMillis();
 					int minUptimeDuration = 60;
 					if (timerProfile != null) {
 						minUptimeDuration = timerProfile.getMinUptimeDuration();
@@ -270,7 +292,6 @@ public class UptimeTable extends StorageHandler {
 			while (cursor.moveToNext());
 			cursor.close();
 		}
-		db.close();
 		
 		//transform from milliseconds to seconds
 		duration = duration / 1000;
@@ -20,9 +20,12 @@ http://beepme.yourexp.at
 
 package com.glanznig.beepme.helper;
 
+import com.glanznig.beepme.BeeperApp;
+
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.os.Handler;
+import android.util.SparseArray;
 
 import java.lang.ref.WeakReference;
 
@@ -30,36 +33,85 @@ public class AsyncImageScaler extends Thread {
 	
 	public static final int MSG_SUCCESS = 32;
 	public static final int MSG_ERROR = 33;
+	// all thumbnails of a photo are done, obj is a SparseArray<Bitmap> keyed by name
+	public static final int MSG_ALL_SUCCESS = 34;
 	private static final String TAG = "AsyncImageScaler";
 	
 	private String srcUri;
-	private String destUri;
+	private String[] destUris;
+	private int[] destSizes;
+	private int[] names;
+	private boolean square;
 	private int destWidth;
 	private int destHeight;
-	private int name;
 	private Handler handler;
     private WeakReference<Context> ctx;
 	
 	public AsyncImageScaler(Context ctx, String srcUri, String destUri, int name, int destWidth, int destHeight, Handler handler) {
         this.ctx = new WeakReference<Context>(ctx);
 		this.srcUri = srcUri;
-		this.destUri = destUri;
+		this.destUris = new String[] { destUri };
+		this.names = new int[] { name };
 		this.destWidth = destWidth;
 		this.destHeight = destHeight;
 		this.handler = handler;
-		this.name = name;
+		this.square = false;
+	}
+	
+	/**
+	 * Creates square thumbnails of several sizes from one decode of the photo
+	 * and reports them with a single {@link #MSG_ALL_SUCCESS} message.
+	 */
+	public AsyncImageScaler(Context ctx, String srcUri, String[] destUris, int[] names, int[] destSizes, Handler handler) {
+        this.ctx = new WeakReference<Context>(ctx);
+		this.srcUri = srcUri;
+		this.destUris = destUris;
+		this.names = names;
+		this.destSizes = destSizes;
+		this.handler = handler;
+		this.square = true;
 	}
 
 	@Override
 	public void run() {
-        Bitmap photo = null;
-        if (ctx.get() != null) {
-            photo = PhotoUtils.scalePhoto(ctx.get(), srcUri, destUri, destWidth, destHeight);
+        Context context = ctx.get();
+        if (context == null) {
+            return;
+        }
+        ThumbnailCache cache = ((BeeperApp)context.getApplicationContext()).getThumbnailCache();
+
+        if (square) {
+            Bitmap[] thumbs = PhotoUtils.scaleThumbnails(context, srcUri, destUris, destSizes);
+
+            // the new thumbnails are going to be shown right away
+            SparseArray<Bitmap> result = new SparseArray<Bitmap>(names.length);
+            if (thumbs != null) {
+                for (int i = 0; i < thumbs.length; i++) {
+                    cache.put(destUris[i], thumbs[i]);
+                    result.put(names[i], thumbs[i]);
+                }
+            }
+
+            if (handler != null) {
+                if (thumbs != null) {
+                    handler.obtainMessage(MSG_ALL_SUCCESS, result).sendToTarget();
+                } else {
+                    handler.obtainMessage(MSG_ERROR).sendToTarget();
+                }
+            }
+            return;
+        }
+
+        Bitmap photo = PhotoUtils.scalePhoto(context, srcUri, destUris[0], destWidth, destHeight);
+
+        // the new thumbnail is going to be shown right away
+        if (photo != null) {
+            cache.put(destUris[0], photo);
         }
 
         if (handler != null) {
             if (photo != null) {
-                handler.obtainMessage(MSG_SUCCESS, name, 0, photo).sendToTarget();
+                handler.obtainMessage(MSG_SUCCESS, names[0], 0, photo).sendToTarget();
             } else {
                 handler.obtainMessage(MSG_ERROR).sendToTarget();
             }
@@ -0,0 +1,120 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme.helper;
+
+import com.glanznig.beepme.BeeperApp;
+import com.glanznig.beepme.db.SampleTable;
+import com.glanznig.beepme.db.ScheduledBeepTable;
+import com.glanznig.beepme.view.BeepActivity;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.PowerManager;
+import android.util.Log;
+
+/**
+ * Receives the beep alarm. The bookkeeping (received time, calls, expiry, statistics) is
+ * done on a background thread while a partial wake lock is held, BeepActivity is only
+ * started if the beep is actually going to be shown.
+ */
+public class BeepAlarmReceiver extends BroadcastReceiver {
+	
+	private static final String TAG = "BeepAlarmReceiver";
+	
+	public static final String EXTRA_BEEP_ID = "com.glanznig.beepme.BeepId";
+	
+	// long enough for BeepActivity to turn on the screen
+	private static final long WAKE_LOCK_TIMEOUT = 10000;
+	
+	@Override
+	public void onReceive(Context context, Intent intent) {
+		final BeeperApp app = (BeeperApp)context.getApplicationContext();
+		final long beepId = intent.getLongExtra(EXTRA_BEEP_ID, 0L);
+		
+		PowerManager powerManager = (PowerManager)context.getSystemService(Context.POWER_SERVICE);
+		final PowerManager.WakeLock wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG);
+		wakeLock.acquire(WAKE_LOCK_TIMEOUT);
+		final PendingResult result = goAsync();
+		
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					handleBeep(app, beepId);
+				}
+				finally {
+					result.finish();
+					if (wakeLock.isHeld()) {
+						wakeLock.release();
+					}
+				}
+			}
+		}, TAG).start();
+	}
+	
+	private static void handleBeep(BeeperApp app, long beepId) {
+		// the alarm may have started the process, the beeper state is restored in the background
+		app.awaitStartup();
+		
+		// alarm of a beep that has been replaced or cancelled in the meantime
+		if (!app.isBeeperActive() || beepId == 0L || beepId != app.getPreferences().getScheduledBeepId()) {
+			Log.i(TAG, "ignoring alarm of beep " + beepId);
+			return;
+		}
+		
+		long now = System.currentTimeMillis();
+		ScheduledBeepTable sbt = new ScheduledBeepTable(app);
+		sbt.receivedScheduledBeep(beepId, now);
+		
+		// decline and pause beeper if active call
+		if (app.getPreferences().getPauseBeeperDuringCall() && app.getPreferences().isCall()) {
+			app.setBeeperActive(BeeperApp.BEEPER_INACTIVE_AFTER_CALL);
+			app.declineBeep(now);
+			return;
+		}
+		
+		// the alarm was delivered much too late, e.g. because the phone was switched off
+		if (sbt.isExpired(beepId)) {
+			app.expireTimer();
+			app.setTimer();
+			return;
+		}
+		
+		SampleTable st = new SampleTable(app);
+		int numAccepted = st.getNumAcceptedToday();
+		int numDeclined = st.getSampleCountToday() - numAccepted;
+		int minUptimeDuration = app.getTimerProfile() != null ? app.getTimerProfile().getMinUptimeDuration() : 60;
+		long uptimeDur = app.getSchedulerState().getUptimeDuration(now, minUptimeDuration);
+		
+		// make sure the sound is decoded by the time BeepActivity is resumed
+		app.getBeepSoundPool();
+		
+		Intent beep = new Intent(app, BeepActivity.class);
+		beep.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+		beep.putExtra(EXTRA_BEEP_ID, beepId);
+		beep.putExtra(BeepActivity.EXTRA_TIMESTAMP, now);
+		beep.putExtra(BeepActivity.EXTRA_NUM_ACCEPTED, numAccepted);
+		beep.putExtra(BeepActivity.EXTRA_NUM_DECLINED, numDeclined);
+		beep.putExtra(BeepActivity.EXTRA_UPTIME_DURATION, uptimeDur);
+		app.startActivity(beep);
+	}
+}
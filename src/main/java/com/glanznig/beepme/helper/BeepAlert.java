@@ -21,22 +21,14 @@ http://beepme.yourexp.at
 package com.glanznig.beepme.helper;
 
 import com.glanznig.beepme.BeeperApp;
-import com.glanznig.beepme.view.BeepActivity;
 
 import android.content.Context;
-import android.content.res.AssetFileDescriptor;
-import android.content.res.Resources;
 import android.media.AudioManager;
-import android.media.MediaPlayer;
-import android.media.MediaPlayer.OnPreparedListener;
-import android.media.SoundPool;
 import android.os.Vibrator;
-import android.util.Log;
 
 public class BeepAlert implements AudioManager.OnAudioFocusChangeListener {
 
-    private SoundPool soundPool = null;
-    private int soundID;
+    private BeepSoundPool soundPool = null;
 	private Context ctx = null;
 	AudioManager audioManager = null;
 	private Vibrator vibrator = null;
@@ -54,33 +46,23 @@ public class BeepAlert implements AudioManager.OnAudioFocusChangeListener {
 	}
 
     public void start() {
-        BeeperApp app = (BeeperApp)((BeepActivity)ctx).getApplication();
+        BeeperApp app = (BeeperApp)ctx.getApplicationContext();
 
         switch (audioManager.getRingerMode()) {
             case AudioManager.RINGER_MODE_NORMAL:
+                // sound is already decoded by the app, so it starts together with the vibration
+                soundPool = app.getBeepSoundPool();
 
-                Resources res = ctx.getResources();
-                final AssetFileDescriptor alarmSound = res.openRawResourceFd(
-                        Integer.valueOf(app.getPreferences().getBeepSoundId()));
-
-                soundPool = new SoundPool(1, AudioManager.STREAM_ALARM, 0);
-                soundID = soundPool.load(alarmSound, 1);
-                soundPool.setOnLoadCompleteListener(new SoundPool.OnLoadCompleteListener() {
-                    @Override
-                    public void onLoadComplete(SoundPool soundPool, int i, int i2) {
-                        //request audio focus
-                        int result = audioManager.requestAudioFocus(BeepAlert.this,
-                                AudioManager.STREAM_ALARM, AudioManager.AUDIOFOCUS_GAIN);
-
-                        if (result == AudioManager.AUDIOFOCUS_REQUEST_GRANTED) {
-                            soundPool.play(soundID, 1.0f, 1.0f, 1, -1, 1f);
-                        }
-                    }
-                });
+                //request audio focus
+                int result = audioManager.requestAudioFocus(BeepAlert.this,
+                        AudioManager.STREAM_ALARM, AudioManager.AUDIOFOCUS_GAIN);
 
                 if (app.getPreferences().isVibrateAtBeep()) {
                     vibrator.vibrate(pattern, 0);
                 }
+                if (result == AudioManager.AUDIOFOCUS_REQUEST_GRANTED) {
+                    soundPool.play();
+                }
                 break;
 
             case AudioManager.RINGER_MODE_SILENT:
@@ -95,9 +77,10 @@ public class BeepAlert implements AudioManager.OnAudioFocusChangeListener {
     }
 
     public void stop() {
+        // the pool is shared, only the playing stream is stopped
         if (soundPool != null) {
-            soundPool.stop(soundID);
-            soundPool.release();
+            soundPool.stop();
+            soundPool = null;
         }
 
         //abandon audio focus
@@ -110,29 +93,27 @@ public class BeepAlert implements AudioManager.OnAudioFocusChangeListener {
 	    switch (focusChange) {
 	        case AudioManager.AUDIOFOCUS_GAIN:
 	            // resume playback
-                if (soundPool == null) {
+                if (soundPool == null || !soundPool.isPlaying()) {
                     start();
                 }
                 else {
-                    soundPool.setVolume(soundID, 1.0f, 1.0f);
-                    soundPool.resume(soundID);
+                    soundPool.setVolume(1.0f);
+                    soundPool.resume();
                 }
 	            break;
 
 	        case AudioManager.AUDIOFOCUS_LOSS:
-	            // Lost focus for an unbounded amount of time: stop playback and release media player
+	            // Lost focus for an unbounded amount of time: stop playback
                 if (soundPool != null) {
-                    soundPool.stop(soundID);
-                    soundPool.release();
+                    soundPool.stop();
                 }
 	            break;
 
 	        case AudioManager.AUDIOFOCUS_LOSS_TRANSIENT:
 	            // Lost focus for a short time, but we have to stop
-	            // playback. We don't release the media player because playback
-	            // is likely to resume
+	            // playback. Playback is likely to resume
                 if (soundPool != null) {
-                    soundPool.pause(soundID);
+                    soundPool.pause();
                 }
 	            break;
 
@@ -140,7 +121,7 @@ public class BeepAlert implements AudioManager.OnAudioFocusChangeListener {
 	            // Lost focus for a short time, but it's ok to keep playing
 	            // at an attenuated level
                 if (soundPool != null) {
-                    soundPool.setVolume(soundID, 0.1f, 0.1f);
+                    soundPool.setVolume(0.1f);
                 }
 	            break;
 	    }
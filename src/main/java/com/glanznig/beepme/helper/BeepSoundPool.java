@@ -0,0 +1,168 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme.helper;
+
+import android.content.Context;
+import android.media.AudioManager;
+import android.media.SoundPool;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Holds the decoded beep sound for the whole lifetime of the process, so that a beep
+ * can start playing right away instead of decoding the sound first. The sound is only
+ * loaded again if another sound resource is selected.
+ */
+public class BeepSoundPool implements SoundPool.OnLoadCompleteListener {
+	
+	private static final String TAG = "BeepSoundPool";
+	
+	// delay (ms) between play() and handing the sound to the SoundPool that is still acceptable,
+	// the output latency of the audio system comes on top of it
+	private static final long PLAY_DELAY_BUDGET = 100;
+	
+	private Context ctx;
+	private SoundPool soundPool;
+	private int resId = 0;
+	private int soundId = 0;
+	private boolean loaded = false;
+	private int streamId = 0;
+	// uptime of a play() call that waits for the sound to be loaded
+	private long playRequested = 0L;
+	private long lastPlayDelay = -1L;
+	
+	public BeepSoundPool(Context ctx) {
+		this.ctx = ctx.getApplicationContext();
+		soundPool = new SoundPool(1, AudioManager.STREAM_ALARM, 0);
+		soundPool.setOnLoadCompleteListener(this);
+	}
+	
+	/**
+	 * Loads the given raw sound resource, does nothing if it is already loaded.
+	 */
+	public synchronized void load(int resId) {
+		if (resId == this.resId) {
+			return;
+		}
+		
+		if (soundId != 0) {
+			if (streamId != 0) {
+				soundPool.stop(streamId);
+				streamId = 0;
+			}
+			soundPool.unload(soundId);
+		}
+		
+		this.resId = resId;
+		loaded = false;
+		soundId = soundPool.load(ctx, resId, 1);
+	}
+	
+	@Override
+	public synchronized void onLoadComplete(SoundPool pool, int sampleId, int status) {
+		// a sound that has been replaced in the meantime
+		if (sampleId != soundId) {
+			return;
+		}
+		
+		if (status != 0) {
+			Log.e(TAG, "could not load beep sound " + resId + ", status " + status);
+			playRequested = 0L;
+			return;
+		}
+		
+		loaded = true;
+		if (playRequested != 0L) {
+			startStream(playRequested);
+		}
+	}
+	
+	/**
+	 * Starts playing the beep sound in a loop. If the sound is not loaded yet,
+	 * it is started as soon as loading is complete.
+	 */
+	public synchronized void play() {
+		if (streamId != 0 || playRequested != 0L) {
+			return;
+		}
+		
+		long now = SystemClock.uptimeMillis();
+		if (loaded) {
+			startStream(now);
+		}
+		else {
+			playRequested = now;
+		}
+	}
+	
+	private void startStream(long requested) {
+		playRequested = 0L;
+		streamId = soundPool.play(soundId, 1.0f, 1.0f, 1, -1, 1f);
+		
+		lastPlayDelay = SystemClock.uptimeMillis() - requested;
+		if (lastPlayDelay > PLAY_DELAY_BUDGET) {
+			Log.w(TAG, "beep sound passed to SoundPool " + lastPlayDelay + " ms after request");
+		}
+		else {
+			Log.d(TAG, "beep sound passed to SoundPool " + lastPlayDelay + " ms after request");
+		}
+	}
+	
+	public synchronized void stop() {
+		playRequested = 0L;
+		if (streamId != 0) {
+			soundPool.stop(streamId);
+			streamId = 0;
+		}
+	}
+	
+	public synchronized void pause() {
+		if (streamId != 0) {
+			soundPool.pause(streamId);
+		}
+	}
+	
+	public synchronized void resume() {
+		if (streamId != 0) {
+			soundPool.resume(streamId);
+		}
+	}
+	
+	public synchronized void setVolume(float volume) {
+		if (streamId != 0) {
+			soundPool.setVolume(streamId, volume, volume);
+		}
+	}
+	
+	public synchronized boolean isPlaying() {
+		return streamId != 0 || playRequested != 0L;
+	}
+	
+	/**
+	 * Returns the delay (ms) between the last play() call and the moment the sound was
+	 * passed to the SoundPool, including the time spent waiting for it to be loaded. When
+	 * the sound actually becomes audible is not known. Returns -1 if no sound has been
+	 * played yet.
+	 */
+	public synchronized long getLastPlayDelay() {
+		return lastPlayDelay;
+	}
+}
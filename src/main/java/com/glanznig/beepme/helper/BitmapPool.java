@@ -0,0 +1,185 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme.helper;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Keeps bitmaps that are no longer needed, so that the next decode or scale of a photo can
+ * reuse their memory instead of allocating a new one. Only bitmaps that are not referenced
+ * anywhere else may be put into the pool; bitmaps shown by a view or held by the
+ * {@link ThumbnailCache} must never end up here.
+ */
+public class BitmapPool {
+	
+	private static final String TAG = "BitmapPool";
+	
+	// a pooled bitmap is only used for a request that needs at least this part of its memory
+	private static final int MIN_FILL_FRACTION = 2;
+	
+	private final int maxBytes;
+	private int size = 0;
+	// least recently added first
+	private final LinkedList<Bitmap> bitmaps = new LinkedList<Bitmap>();
+	
+	public BitmapPool(int maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+	
+	/**
+	 * Returns a mutable bitmap of the given size from the pool,
+	 * or null if there is none that fits. Its content is undefined.
+	 */
+	public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+		int needed = width * height * getBytesPerPixel(config);
+		
+		Iterator<Bitmap> it = bitmaps.iterator();
+		while (it.hasNext()) {
+			Bitmap bitmap = it.next();
+			if (fits(bitmap, width, height, config, needed)) {
+				it.remove();
+				size -= getSize(bitmap);
+				
+				if (bitmap.getWidth() != width || bitmap.getHeight() != height || bitmap.getConfig() != config) {
+					bitmap.reconfigure(width, height, config);
+				}
+				return bitmap;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Like {@link #get(int, int, Bitmap.Config)}, but allocates a new bitmap if none fits.
+	 */
+	public Bitmap create(int width, int height, Bitmap.Config config) {
+		Bitmap bitmap = get(width, height, config);
+		if (bitmap == null) {
+			bitmap = Bitmap.createBitmap(width, height, config);
+		}
+		
+		return bitmap;
+	}
+	
+	/**
+	 * Gives a bitmap back to the pool, it must not be used by the caller afterwards.
+	 */
+	public synchronized void put(Bitmap bitmap) {
+		if (bitmap == null || bitmap.isRecycled()) {
+			return;
+		}
+		
+		int bytes = getSize(bitmap);
+		if (!bitmap.isMutable() || bytes > maxBytes) {
+			bitmap.recycle();
+			return;
+		}
+		
+		bitmaps.addLast(bitmap);
+		size += bytes;
+		trimToSize(maxBytes);
+	}
+	
+	public synchronized void trimToSize(int maxBytes) {
+		while (size > maxBytes && !bitmaps.isEmpty()) {
+			Bitmap oldest = bitmaps.removeFirst();
+			size -= getSize(oldest);
+			oldest.recycle();
+		}
+	}
+	
+	public void clear() {
+		trimToSize(0);
+	}
+	
+	/**
+	 * Decodes the file into a pooled bitmap if possible. The options must hold the
+	 * result of a bounds decode (outWidth, outHeight) and the sample size to use.
+	 */
+	public Bitmap decodeFile(String path, BitmapFactory.Options opts) {
+		opts.inJustDecodeBounds = false;
+		opts.inMutable = true;
+		opts.inBitmap = null;
+		
+		// before KitKat only bitmaps of the exact size can be reused, without subsampling
+		int sample = Math.max(1, opts.inSampleSize);
+		if (opts.outWidth > 0 && opts.outHeight > 0
+				&& (sample == 1 || Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT)) {
+			Bitmap.Config config = opts.inPreferredConfig != null ? opts.inPreferredConfig : Bitmap.Config.ARGB_8888;
+			opts.inBitmap = get((opts.outWidth + sample - 1) / sample,
+					(opts.outHeight + sample - 1) / sample, config);
+		}
+		
+		Bitmap bitmap = null;
+		try {
+			bitmap = BitmapFactory.decodeFile(path, opts);
+		}
+		catch (IllegalArgumentException iae) {
+			// the decoder refused the pooled bitmap
+			Log.w(TAG, "could not reuse bitmap for " + path);
+			put(opts.inBitmap);
+			opts.inBitmap = null;
+			bitmap = BitmapFactory.decodeFile(path, opts);
+		}
+		
+		if (bitmap == null && opts.inBitmap != null) {
+			put(opts.inBitmap);
+		}
+		opts.inBitmap = null;
+		
+		return bitmap;
+	}
+	
+	private static boolean fits(Bitmap bitmap, int width, int height, Bitmap.Config config, int needed) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			int available = bitmap.getAllocationByteCount();
+			return available >= needed && available / MIN_FILL_FRACTION <= needed;
+		}
+		
+		return bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config;
+	}
+	
+	private static int getSize(Bitmap bitmap) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+			return bitmap.getAllocationByteCount();
+		}
+		
+		return bitmap.getRowBytes() * bitmap.getHeight();
+	}
+	
+	private static int getBytesPerPixel(Bitmap.Config config) {
+		if (config == Bitmap.Config.ARGB_8888) {
+			return 4;
+		}
+		else if (config == Bitmap.Config.ALPHA_8) {
+			return 1;
+		}
+		
+		return 2;
+	}
+}
@@ -0,0 +1,73 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme.helper;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Local days are numbered as days since 1970-01-01 in the default time zone.
+ * The number can be used as a grouping key in SQL as well as in Java.
+ */
+public class LocalDay {
+	
+	private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+	
+	// julian day number of 1970-01-01 00:00
+	private static final String JULIAN_EPOCH = "2440587.5";
+	
+	public static long of(long millis) {
+		long local = millis + TimeZone.getDefault().getOffset(millis);
+		long day = local / MILLIS_PER_DAY;
+		if (local < 0 && local % MILLIS_PER_DAY != 0) {
+			day -= 1;
+		}
+		
+		return day;
+	}
+	
+	public static long of(Calendar cal) {
+		return of(cal.getTimeInMillis());
+	}
+	
+	public static long today() {
+		return of(System.currentTimeMillis());
+	}
+	
+	// timestamp of local midnight at the beginning of the given day
+	public static long startOf(long day) {
+		TimeZone tz = TimeZone.getDefault();
+		long utc = day * MILLIS_PER_DAY;
+		// the offset at utc midnight is only a guess, the one at local midnight is needed
+		long start = utc - tz.getOffset(utc - tz.getOffset(utc));
+		if (of(start) != day) {
+			// midnight is skipped by a daylight saving change, the day starts with it
+			start = utc - tz.getOffset(start);
+		}
+		
+		return start;
+	}
+	
+	// sql expression that computes the local day of a millisecond timestamp column
+	public static String sql(String column) {
+		return "CAST(julianday(" + column + " / 1000, 'unixepoch', 'localtime') - " + JULIAN_EPOCH + " AS INTEGER)";
+	}
+}
@@ -42,6 +42,11 @@ import java.io.*;
  *
  * <h3>About this Version</h3>
  *
+ * <p><b>Changes for BeepMe:</b> setSeed reuses the state arrays, nextLong(n) uses
+ * a multiply-shift instead of a modulo for n < 2^31, added nextLongs, nextDoubles
+ * and nextBooleans to fill whole arrays at once, added a constructor that restores
+ * a saved state.
+ *
  * <p><b>Changes since V19:</b> nextFloat(boolean, boolean) now returns float,
  * not double.
  *
@@ -275,6 +280,18 @@ public strictfp class MersenneTwister implements Serializable, Cloneable {
         }
     
 
+    /**
+     * Constructor restoring a state written by writeState, without
+     * computing a seeded state first.
+     */
+    public MersenneTwister(DataInputStream stream) throws IOException
+        {
+        mt = new int[N];
+        mag01 = new int[2];
+        readState(stream);
+        }
+    
+
     /**
      * Constructor using an array of integers as seed.
      * Your array must have a non-zero length.  Only the first 624 integers
@@ -299,9 +316,9 @@ public strictfp class MersenneTwister implements Serializable, Cloneable {
         // doing our own Gaussian variable.
         __haveNextNextGaussian = false;
 
-        mt = new int[N];
+        if (mt == null) mt = new int[N];
         
-        mag01 = new int[2];
+        if (mag01 == null) mag01 = new int[2];
         mag01[0] = 0x0;
         mag01[1] = MATRIX_A;
 
@@ -773,6 +790,24 @@ public strictfp class MersenneTwister implements Serializable, Cloneable {
         if (n<=0)
             throw new IllegalArgumentException("n must be positive, got: " + n);
         
+        if (n <= Integer.MAX_VALUE)
+            {
+            // multiply-shift on 32 random bits (Lemire), only a small fraction
+            // of the draws need the modulo to check for bias
+            long m = (nextInt() & 0xffffffffL) * n;
+            long low = m & 0xffffffffL;
+            if (low < n)
+                {
+                long threshold = (0x100000000L - n) % n;
+                while (low < threshold)
+                    {
+                    m = (nextInt() & 0xffffffffL) * n;
+                    low = m & 0xffffffffL;
+                    }
+                }
+            return m >>> 32;
+            }
+        
         long bits, val;
         do 
             {
@@ -841,6 +876,119 @@ public strictfp class MersenneTwister implements Serializable, Cloneable {
         return val;
         }
 
+    /** Fills the array with values as returned by nextLong(). */
+    public void nextLongs(long[] values)
+        {
+        final int[] mt = this.mt;
+        int y;
+        int z;
+        
+        for (int i = 0; i < values.length; i++)
+            {
+            if (mti >= N) generate();
+            y = mt[mti++];
+            y ^= y >>> 11;                          // TEMPERING_SHIFT_U(y)
+            y ^= (y << 7) & TEMPERING_MASK_B;       // TEMPERING_SHIFT_S(y)
+            y ^= (y << 15) & TEMPERING_MASK_C;      // TEMPERING_SHIFT_T(y)
+            y ^= (y >>> 18);                        // TEMPERING_SHIFT_L(y)
+            
+            if (mti >= N) generate();
+            z = mt[mti++];
+            z ^= z >>> 11;                          // TEMPERING_SHIFT_U(z)
+            z ^= (z << 7) & TEMPERING_MASK_B;       // TEMPERING_SHIFT_S(z)
+            z ^= (z << 15) & TEMPERING_MASK_C;      // TEMPERING_SHIFT_T(z)
+            z ^= (z >>> 18);                        // TEMPERING_SHIFT_L(z)
+            
+            values[i] = (((long)y) << 32) + (long)z;
+            }
+        }
+
+
+    /** Fills the array with values as returned by nextLong(n). */
+    public void nextLongs(long n, long[] values)
+        {
+        if (n<=0)
+            throw new IllegalArgumentException("n must be positive, got: " + n);
+        
+        for (int i = 0; i < values.length; i++)
+            values[i] = nextLong(n);
+        }
+
+
+    /** Fills the array with values as returned by nextDouble(). */
+    public void nextDoubles(double[] values)
+        {
+        final int[] mt = this.mt;
+        int y;
+        int z;
+        
+        for (int i = 0; i < values.length; i++)
+            {
+            if (mti >= N) generate();
+            y = mt[mti++];
+            y ^= y >>> 11;                          // TEMPERING_SHIFT_U(y)
+            y ^= (y << 7) & TEMPERING_MASK_B;       // TEMPERING_SHIFT_S(y)
+            y ^= (y << 15) & TEMPERING_MASK_C;      // TEMPERING_SHIFT_T(y)
+            y ^= (y >>> 18);                        // TEMPERING_SHIFT_L(y)
+            
+            if (mti >= N) generate();
+            z = mt[mti++];
+            z ^= z >>> 11;                          // TEMPERING_SHIFT_U(z)
+            z ^= (z << 7) & TEMPERING_MASK_B;       // TEMPERING_SHIFT_S(z)
+            z ^= (z << 15) & TEMPERING_MASK_C;      // TEMPERING_SHIFT_T(z)
+            z ^= (z >>> 18);                        // TEMPERING_SHIFT_L(z)
+            
+            values[i] = ((((long)(y >>> 6)) << 27) + (z >>> 5)) / (double)(1L << 53);
+            }
+        }
+
+
+    /** Fills the array with values as returned by nextBoolean(). */
+    public void nextBooleans(boolean[] values)
+        {
+        final int[] mt = this.mt;
+        int y;
+        
+        for (int i = 0; i < values.length; i++)
+            {
+            if (mti >= N) generate();
+            y = mt[mti++];
+            y ^= y >>> 11;                          // TEMPERING_SHIFT_U(y)
+            y ^= (y << 7) & TEMPERING_MASK_B;       // TEMPERING_SHIFT_S(y)
+            y ^= (y << 15) & TEMPERING_MASK_C;      // TEMPERING_SHIFT_T(y)
+            y ^= (y >>> 18);                        // TEMPERING_SHIFT_L(y)
+            
+            values[i] = (y >>> 31) != 0;
+            }
+        }
+
+
+    // generate N words at one time
+    private void generate()
+        {
+        int kk;
+        int y;
+        final int[] mt = this.mt; // locals are slightly faster 
+        final int[] mag01 = this.mag01; // locals are slightly faster 
+        
+        for (kk = 0; kk < N - M; kk++)
+            {
+            y = (mt[kk] & UPPER_MASK) | (mt[kk+1] & LOWER_MASK);
+            mt[kk] = mt[kk+M] ^ (y >>> 1) ^ mag01[y & 0x1];
+            }
+        for (; kk < N-1; kk++)
+            {
+            y = (mt[kk] & UPPER_MASK) | (mt[kk+1] & LOWER_MASK);
+            mt[kk] = mt[kk+(M-N)] ^ (y >>> 1) ^ mag01[y & 0x1];
+            }
+        y = (mt[N-1] & UPPER_MASK) | (mt[0] & LOWER_MASK);
+        mt[N-1] = mt[M-1] ^ (y >>> 1) ^ mag01[y & 0x1];
+
+        mti = 0;
+        }
+
+
+
     /** Returns a random double in the half-open range from [0.0,1.0).  Thus 0.0 is a valid
         result but 1.0 is not. */
     public double nextDouble()
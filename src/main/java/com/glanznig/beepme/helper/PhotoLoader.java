@@ -0,0 +1,257 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme.helper;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.glanznig.beepme.BeeperApp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Message;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Decodes thumbnails on a fixed number of worker threads. Requests are bound to a target
+ * (usually the view that shows the photo), a new request for the same target supersedes
+ * the old one, which is dropped if it has not been decoded yet. The result is delivered to
+ * the request's handler as {@link PhotoUtils#MSG_PHOTO_LOADED} with the uri in the data
+ * bundle, or {@link PhotoUtils#MSG_PHOTO_LOAD_ERROR}.
+ */
+public class PhotoLoader {
+	
+	private static final String TAG = "PhotoLoader";
+	
+	public static final int PRIORITY_LOW = 0;
+	public static final int PRIORITY_NORMAL = 1;
+	public static final int PRIORITY_HIGH = 2;
+	
+	private static final int POOL_SIZE = 2;
+	// log the metrics every n decodes
+	private static final int LOG_INTERVAL = 32;
+	
+	private final Context ctx;
+	private final ThumbnailCache cache;
+	private final ThreadPoolExecutor executor;
+	private final Map<Object, Request> requests = new WeakHashMap<Object, Request>();
+	private final AtomicLong sequence = new AtomicLong(0);
+	
+	// metrics
+	private int decodeCount = 0;
+	private long decodeTime = 0;
+	private int cancelCount = 0;
+	private int maxQueueDepth = 0;
+	
+	private class Request implements Runnable, Comparable<Request> {
+		final WeakReference<Object> target;
+		final String uri;
+		final int width;
+		final int height;
+		final int priority;
+		final long seq;
+		final Handler handler;
+		// decode the photo itself instead of a thumbnail
+		final boolean display;
+		volatile boolean cancelled = false;
+		
+		Request(Object target, String uri, int width, int height, int priority, Handler handler, boolean display) {
+			this.target = new WeakReference<Object>(target);
+			this.uri = uri;
+			this.width = width;
+			this.height = height;
+			this.priority = priority;
+			this.seq = sequence.incrementAndGet();
+			this.handler = handler;
+			this.display = display;
+		}
+		
+		// higher priority first, within the same priority the most recent request
+		// first, as it belongs to what is currently on the screen
+		@Override
+		public int compareTo(Request other) {
+			if (priority != other.priority) {
+				return priority > other.priority ? -1 : 1;
+			}
+			if (seq != other.seq) {
+				return seq > other.seq ? -1 : 1;
+			}
+			return 0;
+		}
+		
+		@Override
+		public void run() {
+			if (cancelled) {
+				return;
+			}
+			
+			long start = System.nanoTime();
+			Bitmap photo;
+			if (display) {
+				photo = PhotoUtils.decodeForDisplay(ctx, uri, width, height);
+			}
+			else {
+				photo = cache.load(uri, width, height);
+			}
+			decoded((System.nanoTime() - start) / 1000000);
+			
+			if (!finish(this)) {
+				// nobody else knows about a display bitmap, its memory can be reused
+				if (display && photo != null) {
+					((BeeperApp)ctx).getBitmapPool().put(photo);
+				}
+				return;
+			}
+			
+			if (photo != null) {
+				deliver(handler, uri, photo);
+			}
+			else {
+				handler.obtainMessage(PhotoUtils.MSG_PHOTO_LOAD_ERROR).sendToTarget();
+			}
+		}
+	}
+	
+	public PhotoLoader(Context ctx, ThumbnailCache cache) {
+		this.ctx = ctx.getApplicationContext();
+		this.cache = cache;
+		executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 0L, TimeUnit.MILLISECONDS,
+				new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+			private int count = 0;
+			
+			@Override
+			public Thread newThread(final Runnable r) {
+				return new Thread(new Runnable() {
+					@Override
+					public void run() {
+						Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+						r.run();
+					}
+				}, "photo-loader-" + (++count));
+			}
+		});
+	}
+	
+	/**
+	 * Loads the photo at the given uri for the target. Width and height are a hint for the
+	 * size the photo is shown at, 0 to decode the full image. A photo that is already in
+	 * memory is delivered right away.
+	 */
+	public void load(Object target, String uri, int width, int height, int priority, Handler handler) {
+		cancel(target);
+		
+		Bitmap cached = cache.get(uri);
+		if (cached != null) {
+			deliver(handler, uri, cached);
+			return;
+		}
+		
+		enqueue(new Request(target, uri, width, height, priority, handler, false));
+	}
+	
+	/**
+	 * Loads the photo itself for the target, subsampled to the given view size
+	 * and turned upright. These photos are not kept in memory by the loader.
+	 */
+	public void loadPhoto(Object target, String uri, int width, int height, int priority, Handler handler) {
+		cancel(target);
+		enqueue(new Request(target, uri, width, height, priority, handler, true));
+	}
+	
+	private void enqueue(Request request) {
+		int depth;
+		synchronized (requests) {
+			requests.put(request.target.get(), request);
+			executor.execute(request);
+			depth = executor.getQueue().size();
+			if (depth > maxQueueDepth) {
+				maxQueueDepth = depth;
+			}
+		}
+	}
+	
+	/**
+	 * Drops the pending request of the target, e.g. when a list row is recycled.
+	 */
+	public void cancel(Object target) {
+		synchronized (requests) {
+			Request old = requests.remove(target);
+			if (old != null) {
+				old.cancelled = true;
+				executor.remove(old);
+				cancelCount++;
+			}
+		}
+	}
+	
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+	
+	public synchronized String getMetrics() {
+		long avg = decodeCount > 0 ? decodeTime / decodeCount : 0;
+		synchronized (requests) {
+			return "decodes: " + decodeCount + ", avg decode time: " + avg + " ms, cancelled: " + cancelCount
+					+ ", queue depth: " + getQueueDepth() + " (max " + maxQueueDepth + ")";
+		}
+	}
+	
+	// removes the finished request, false if it has been cancelled or superseded meanwhile
+	private boolean finish(Request request) {
+		synchronized (requests) {
+			Object target = request.target.get();
+			if (request.cancelled || target == null || requests.get(target) != request) {
+				return false;
+			}
+			requests.remove(target);
+			return true;
+		}
+	}
+	
+	private void decoded(long millis) {
+		boolean log;
+		synchronized (this) {
+			decodeCount++;
+			decodeTime += millis;
+			log = decodeCount % LOG_INTERVAL == 0;
+		}
+		if (log) {
+			Log.d(TAG, getMetrics());
+		}
+	}
+	
+	private static void deliver(Handler handler, String uri, Bitmap photo) {
+		Bundle b = new Bundle();
+		b.putString("uri", uri);
+		Message msg = handler.obtainMessage(PhotoUtils.MSG_PHOTO_LOADED, photo);
+		msg.setData(b);
+		msg.sendToTarget();
+	}
+}
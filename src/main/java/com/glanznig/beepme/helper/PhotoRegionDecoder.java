@@ -0,0 +1,136 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme.helper;
+
+import java.io.IOException;
+
+import com.glanznig.beepme.BeeperApp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+
+import it.sephiroth.android.library.media.ExifInterfaceExtended;
+
+/**
+ * Decodes parts of a photo at full or reduced resolution, for showing a zoomed photo as tiles
+ * without ever decoding all of it. Coordinates are in the upright photo, i.e. after its EXIF
+ * orientation is applied. Tiles are decoded one after the other, decoding must not be done
+ * on the main thread.
+ */
+public class PhotoRegionDecoder {
+	
+	private static final String TAG = "PhotoRegionDecoder";
+	
+	private final BitmapPool pool;
+	private BitmapRegionDecoder decoder;
+	private final int rotateDeg;
+	// size of the stored (not rotated) photo
+	private final int rawWidth;
+	private final int rawHeight;
+	
+	public PhotoRegionDecoder(Context ctx, String uri) throws IOException {
+		pool = ((BeeperApp)ctx.getApplicationContext()).getBitmapPool();
+		decoder = BitmapRegionDecoder.newInstance(uri, false);
+		rawWidth = decoder.getWidth();
+		rawHeight = decoder.getHeight();
+		
+		ExifInterfaceExtended.initialize(ctx);
+		rotateDeg = PhotoUtils.getRotation(new ExifInterfaceExtended(uri));
+	}
+	
+	/**
+	 * Width of the upright photo.
+	 */
+	public int getWidth() {
+		return rotateDeg == 90 || rotateDeg == 270 ? rawHeight : rawWidth;
+	}
+	
+	/**
+	 * Height of the upright photo.
+	 */
+	public int getHeight() {
+		return rotateDeg == 90 || rotateDeg == 270 ? rawWidth : rawHeight;
+	}
+	
+	/**
+	 * Returns the sample size for tiles that are shown at the given scale
+	 * (view pixels per photo pixel): the largest power of 2 not above 1 / scale.
+	 */
+	public static int getSampleSize(float scale) {
+		int sample = 1;
+		while (scale > 0 && sample * 2 * scale <= 1f) {
+			sample *= 2;
+		}
+		
+		return sample;
+	}
+	
+	/**
+	 * Decodes the given part of the upright photo, subsampled by sampleSize.
+	 * Returns null if the decoder has been closed or the region is empty.
+	 */
+	public synchronized Bitmap decodeTile(Rect region, int sampleSize) {
+		if (decoder == null) {
+			return null;
+		}
+		
+		Rect raw = toRaw(region);
+		if (!raw.intersect(0, 0, rawWidth, rawHeight)) {
+			return null;
+		}
+		
+		BitmapFactory.Options opts = new BitmapFactory.Options();
+		opts.inSampleSize = sampleSize;
+		Bitmap tile = decoder.decodeRegion(raw, opts);
+		if (tile == null || rotateDeg == 0) {
+			return tile;
+		}
+		
+		Bitmap upright = PhotoUtils.rotate(pool, tile, rotateDeg);
+		pool.put(tile);
+		
+		return upright;
+	}
+	
+	public synchronized void close() {
+		if (decoder != null) {
+			decoder.recycle();
+			decoder = null;
+		}
+	}
+	
+	// maps a region of the upright photo to the stored photo
+	private Rect toRaw(Rect r) {
+		switch (rotateDeg) {
+			case 90:
+				return new Rect(r.top, rawHeight - r.right, r.bottom, rawHeight - r.left);
+			case 180:
+				return new Rect(rawWidth - r.right, rawHeight - r.bottom, rawWidth - r.left, rawHeight - r.top);
+			case 270:
+				return new Rect(rawWidth - r.bottom, r.left, rawWidth - r.top, r.right);
+			default:
+				return new Rect(r);
+		}
+	}
+}
@@ -27,26 +27,29 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 
 import com.glanznig.beepme.BeeperApp;
 
-import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.Matrix;
-import android.media.ThumbnailUtils;
+import android.graphics.Paint;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
 import android.os.Handler;
-import android.os.Message;
 import android.provider.MediaStore;
+import android.util.DisplayMetrics;
 import android.util.Log;
 
 import it.sephiroth.android.library.media.ExifInterfaceExtended;
@@ -148,42 +151,75 @@ public class PhotoUtils {
         return null;
     }
 	
+	/**
+	 * Decodes the photo at the size of the screen, see {@link #decodeForDisplay}.
+	 */
 	public static Bitmap getBitmap(Context ctx, String uri) {
-		if (Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState())) {
-	    	try {
-	    		return MediaStore.Images.Media.getBitmap(
-	    				ctx.getContentResolver(), Uri.fromFile(new File(uri)));
-	    	}
-	    	catch(IOException ioe) {
-	    		Log.e(TAG, ioe.getMessage());
-	    	}
+		if (uri != null && Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState())) {
+			DisplayMetrics metrics = ctx.getResources().getDisplayMetrics();
+			return decodeForDisplay(ctx, uri, metrics.widthPixels, metrics.heightPixels);
 		}
 		
 		return null;
 	}
 	
-	public static void getAsyncBitmap(Context ctx, final String uri, final Handler handler) {
-		if (Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState())) {
-			final ContentResolver resolver = ctx.getContentResolver();
+	/**
+	 * Decodes the photo for a view of the given size: it is subsampled as long as it still
+	 * covers the view and turned upright according to its EXIF orientation. Must not be
+	 * called on the main thread.
+	 */
+	public static Bitmap decodeForDisplay(Context ctx, String uri, int reqWidth, int reqHeight) {
+		try {
+			BitmapFactory.Options opts = new BitmapFactory.Options();
+			opts.inJustDecodeBounds = true;
+			BitmapFactory.decodeFile(uri, opts);
+			if (opts.outWidth <= 0 || opts.outHeight <= 0) {
+				Log.w(TAG, "could not read size of " + uri);
+				return null;
+			}
+			
+			ExifInterfaceExtended.initialize(ctx);
+			int rotateDeg = getRotation(new ExifInterfaceExtended(uri));
+			
+			// compare in the orientation the photo is shown in
+			int width = opts.outWidth;
+			int height = opts.outHeight;
+			if (rotateDeg == 90 || rotateDeg == 270) {
+				width = opts.outHeight;
+				height = opts.outWidth;
+			}
 			
-			Thread bitmapLoader = new Thread() {
-				public void run() {
-					try {
-			    		Bitmap photo = MediaStore.Images.Media.getBitmap(
-			    				resolver, Uri.fromFile(new File(uri)));
-			    		Bundle b = new Bundle();
-			    		b.putString("uri", uri);
-			    		Message msg = handler.obtainMessage(MSG_PHOTO_LOADED, photo);
-			    		msg.setData(b);
-			    		msg.sendToTarget();
-			    	}
-			    	catch(IOException ioe) {
-			    		Log.e(TAG, ioe.getMessage());
-			    		handler.obtainMessage(MSG_PHOTO_LOAD_ERROR).sendToTarget();
-			    	}
+			int scale = 1;
+			if (reqWidth > 0 && reqHeight > 0) {
+				while (width / scale / 2 >= reqWidth && height / scale / 2 >= reqHeight) {
+					scale *= 2;
 				}
-			};
-			bitmapLoader.start();
+			}
+			
+			BitmapPool pool = ((BeeperApp)ctx.getApplicationContext()).getBitmapPool();
+			opts.inSampleSize = scale;
+			Bitmap decoded = pool.decodeFile(uri, opts);
+			if (decoded == null || rotateDeg == 0) {
+				return decoded;
+			}
+			
+			Bitmap upright = rotate(pool, decoded, rotateDeg);
+			pool.put(decoded);
+			
+			return upright;
+		}
+		catch (IOException ioe) {
+			Log.e(TAG, "could not decode " + uri, ioe);
+		}
+		
+		return null;
+	}
+	
+	public static void getAsyncBitmap(Context ctx, String uri, Handler handler) {
+		if (Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState())) {
+			// the handler is the target, a new handler per request never supersedes another one
+			((BeeperApp)ctx.getApplicationContext()).getPhotoLoader().load(handler, uri, 0, 0,
+					PhotoLoader.PRIORITY_NORMAL, handler);
 		}
 		else {
 			handler.obtainMessage(MSG_PHOTO_LOAD_ERROR).sendToTarget();
@@ -236,6 +272,7 @@ public class PhotoUtils {
 				
 				// delete thumbnails
                 BeeperApp app = (BeeperApp)ctx.getApplicationContext();
+                app.getThumbnailCache().removeAll(getThumbnailPrefix(uri));
                 int[] thumbSizes = app.getPreferences().getThumbnailSizes();
 				for (int i = 0; i < thumbSizes.length; i++) {
 					// get name without .jpg extension
@@ -283,20 +320,47 @@ public class PhotoUtils {
 	
 	public static void regenerateThumbnails(Context ctx, String uri, Handler handler) {
 		deleteThumbnails(ctx, uri);
-		final float scale = ctx.getResources().getDisplayMetrics().density;
-        BeeperApp app = (BeeperApp)ctx.getApplicationContext();
-        int[] thumbSizes = app.getPreferences().getThumbnailSizes();
-		for (int i = 0; i < thumbSizes.length; i++) {
-			generateThumbnail(ctx, uri, thumbSizes[i], (int)(thumbSizes[i] * scale + 0.5f), handler);
-		}
+		generateThumbnails(ctx, uri, handler);
 	}
 	
+	/**
+	 * Creates all missing thumbnail sizes of the photo from one decode. The handler
+	 * gets a single {@link AsyncImageScaler#MSG_ALL_SUCCESS} when all of them are written.
+	 */
 	public static void generateThumbnails(Context ctx, String uri, Handler handler) {
+		if (uri == null || !Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState())) {
+			return;
+		}
+		
 		final float scale = ctx.getResources().getDisplayMetrics().density;
         BeeperApp app = (BeeperApp)ctx.getApplicationContext();
         int[] thumbSizes = app.getPreferences().getThumbnailSizes();
+		
+		List<Integer> missing = new ArrayList<Integer>();
 		for (int i = 0; i < thumbSizes.length; i++) {
-			generateThumbnail(ctx, uri, thumbSizes[i], (int)(thumbSizes[i] * scale + 0.5f), handler);
+			File thumb = new File(getThumbnailUri(uri, thumbSizes[i]));
+			// create thumbs dir if it not already exists
+			if (!thumb.getParentFile().exists()) {
+				thumb.getParentFile().mkdirs();
+			}
+			if (!thumb.exists()) {
+				missing.add(Integer.valueOf(i));
+			}
+		}
+		
+		if (missing.size() > 0) {
+			String[] destUris = new String[missing.size()];
+			int[] names = new int[missing.size()];
+			int[] sizes = new int[missing.size()];
+			for (int i = 0; i < missing.size(); i++) {
+				int name = thumbSizes[missing.get(i).intValue()];
+				destUris[i] = getThumbnailUri(uri, name);
+				names[i] = name;
+				sizes[i] = (int)(name * scale + 0.5f);
+			}
+			
+			AsyncImageScaler scaler = new AsyncImageScaler(ctx, uri, destUris, names, sizes, handler);
+			scaler.start();
 		}
 	}
 	
@@ -337,6 +401,16 @@ public class PhotoUtils {
 		return null;
 	}
 	
+	// common start of the uris of all thumbnail sizes of a photo
+	private static String getThumbnailPrefix(String photoUri) {
+		File photo = new File(photoUri);
+		String path = photo.getParent() + File.separator + THUMB_DIR;
+		// get name without .jpg extension
+		String name = photo.getName().substring(0, photo.getName().length() - 4);
+		
+		return new File(path, name + PHOTO_THUMB_SUFFIX).getAbsolutePath();
+	}
+	
 	public static boolean isEnabled(Context ctx) {
 		boolean enabled = true;
 		
@@ -399,27 +473,9 @@ public class PhotoUtils {
                 // check if photo needs to be rotated
                 ExifInterfaceExtended.initialize(ctx);
                 ExifInterfaceExtended srcExif = new ExifInterfaceExtended(srcUri);
+                int rotateDeg = getRotation(srcExif);
 
-                int rotationTag = srcExif.getAttributeInt(ExifInterfaceExtended.TAG_EXIF_ORIENTATION,
-                        ExifInterfaceExtended.ORIENTATION_NORMAL);
-                int rotateDeg = 0;
-
-                if (rotationTag == ExifInterfaceExtended.ORIENTATION_ROTATE_90) {
-                    rotateDeg = 90;
-                    // swap width and height for scaling
-                    int swap = srcWidth;
-                    srcWidth = srcHeight;
-                    srcHeight = swap;
-
-                    swap = destWidth;
-                    destWidth = destHeight;
-                    destHeight = swap;
-                }
-                else if (rotationTag == ExifInterfaceExtended.ORIENTATION_ROTATE_180) {
-                    rotateDeg = 180;
-                }
-                else if (rotationTag == ExifInterfaceExtended.ORIENTATION_ROTATE_270) {
-                    rotateDeg = 270;
+                if (rotateDeg == 90 || rotateDeg == 270) {
                     // swap width and height for scaling
                     int swap = srcWidth;
                     srcWidth = srcHeight;
@@ -438,58 +494,23 @@ public class PhotoUtils {
                     scale *= 2;
                 }
 
-                // now decode image with scale factor (inSampleSize)
-                opts.inJustDecodeBounds = false;
+                // now decode image with scale factor (inSampleSize), reusing memory of earlier decodes
+                BitmapPool pool = ((BeeperApp)ctx.getApplicationContext()).getBitmapPool();
                 opts.inSampleSize = scale;
-                fileInput = new FileInputStream(srcUri);
-                Bitmap photo = BitmapFactory.decodeStream(fileInput, null, opts);
-                fileInput.close();
-
-                // rotate photo (if needed)
-                Matrix matrix = new Matrix();
-                Bitmap rotatedPhoto = null;
-                if (rotateDeg != 0) {
-                    matrix.preRotate(rotateDeg);
-                    rotatedPhoto = Bitmap.createBitmap(photo, 0, 0,
-                            photo.getWidth(), photo.getHeight(), matrix, true);
-                }
-
-                if (rotatedPhoto != null) {
-                    photo.recycle();
-                    photo = rotatedPhoto;
-                }
-
-                // scale photo
-                Bitmap croppedPhoto = null;
-                if (Math.abs(srcRatio - destRatio) > 0.001) {
-                    // different ratio: scale to fit CENTER
-                    croppedPhoto = ThumbnailUtils.extractThumbnail(photo, destWidth, destHeight);
-
-                    if (croppedPhoto != null) {
-                        photo.recycle();
-                        photo = croppedPhoto;
-                    }
-                }
-                else {
-                    photo = Bitmap.createScaledBitmap(photo, destWidth, destHeight, true);
+                Bitmap decoded = pool.decodeFile(srcUri, opts);
+                if (decoded == null) {
+                    return null;
                 }
 
-                // save image to file
-                if (destUri != null) {
-                    FileOutputStream outStream = new FileOutputStream(destUri);
-                    photo.compress(Bitmap.CompressFormat.JPEG, PHOTO_QUALITY, outStream);
-                    outStream.close();
-                }
+                // different ratio: scale to fill and crop at the center
+                Bitmap photo = drawScaled(pool, decoded, rotateDeg, destWidth, destHeight,
+                        Math.abs(srcRatio - destRatio) > 0.001);
+                pool.put(decoded);
 
-                // attach exif information from src photo
+                // save image to file and attach exif information from src photo
                 Bundle exifData = new Bundle();
                 srcExif.copyTo(exifData);
-                ExifInterfaceExtended destExif = new ExifInterfaceExtended(destUri);
-                destExif.copyFrom(exifData, true);
-                // since we rotated the photo orientation tag should be reset
-                destExif.setAttribute(ExifInterfaceExtended.TAG_EXIF_ORIENTATION,
-                        String.valueOf(ExifInterfaceExtended.ORIENTATION_NORMAL));
-                destExif.saveAttributes();
+                writePhoto(photo, destUri, exifData);
 
                 return photo;
             }
@@ -501,4 +522,155 @@ public class PhotoUtils {
         return null;
     }
 
+    /**
+     * Creates square thumbnails of all given sizes from a single decode of the photo. The
+     * photo is decoded at the sample size the largest thumbnail needs and rotated once,
+     * every smaller thumbnail is scaled down from the next larger one. Returns the
+     * thumbnails in the order of the sizes, or null if the photo could not be decoded.
+     */
+    public static Bitmap[] scaleThumbnails(Context ctx, String srcUri, String[] destUris, int[] sizes) {
+        if (srcUri == null || sizes.length == 0) {
+            return null;
+        }
+
+        // largest first
+        Integer[] order = new Integer[sizes.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = Integer.valueOf(i);
+        }
+        final int[] sortSizes = sizes;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return sortSizes[b.intValue()] - sortSizes[a.intValue()];
+            }
+        });
+        int maxSize = sizes[order[0].intValue()];
+
+        try {
+            BitmapFactory.Options opts = new BitmapFactory.Options();
+            opts.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(srcUri, opts);
+            if (opts.outWidth <= 0 || opts.outHeight <= 0 || maxSize <= 0) {
+                return null;
+            }
+
+            ExifInterfaceExtended.initialize(ctx);
+            ExifInterfaceExtended srcExif = new ExifInterfaceExtended(srcUri);
+            int rotateDeg = getRotation(srcExif);
+            Bundle exifData = new Bundle();
+            srcExif.copyTo(exifData);
+
+            // thumbnails are square, rotation does not change the sample size
+            int scale = 1;
+            while (opts.outWidth / scale / 2 >= maxSize && opts.outHeight / scale / 2 >= maxSize) {
+                scale *= 2;
+            }
+
+            BitmapPool pool = ((BeeperApp)ctx.getApplicationContext()).getBitmapPool();
+            opts.inSampleSize = scale;
+            Bitmap decoded = pool.decodeFile(srcUri, opts);
+            if (decoded == null) {
+                return null;
+            }
+
+            boolean crop = opts.outWidth != opts.outHeight;
+            Bitmap[] thumbs = new Bitmap[sizes.length];
+            Bitmap previous = null;
+            for (int i = 0; i < order.length; i++) {
+                int idx = order[i].intValue();
+                if (previous == null) {
+                    thumbs[idx] = drawScaled(pool, decoded, rotateDeg, sizes[idx], sizes[idx], crop);
+                    pool.put(decoded);
+                }
+                else {
+                    thumbs[idx] = drawScaled(pool, previous, 0, sizes[idx], sizes[idx], false);
+                }
+                writePhoto(thumbs[idx], destUris[idx], exifData);
+                previous = thumbs[idx];
+            }
+
+            return thumbs;
+        }
+        catch(Exception e) {
+            Log.e(TAG, "Error while creating thumbnails.", e);
+        }
+
+        return null;
+    }
+
+    static int getRotation(ExifInterfaceExtended exif) {
+        int rotationTag = exif.getAttributeInt(ExifInterfaceExtended.TAG_EXIF_ORIENTATION,
+                ExifInterfaceExtended.ORIENTATION_NORMAL);
+
+        if (rotationTag == ExifInterfaceExtended.ORIENTATION_ROTATE_90) {
+            return 90;
+        }
+        else if (rotationTag == ExifInterfaceExtended.ORIENTATION_ROTATE_180) {
+            return 180;
+        }
+        else if (rotationTag == ExifInterfaceExtended.ORIENTATION_ROTATE_270) {
+            return 270;
+        }
+
+        return 0;
+    }
+
+    // rotates and scales in one go: centers the source at the origin, rotates it,
+    // scales it and moves it to the center of the destination
+    private static Bitmap drawScaled(BitmapPool pool, Bitmap src, int rotateDeg, int destWidth, int destHeight, boolean crop) {
+        int rotWidth = rotateDeg == 90 || rotateDeg == 270 ? src.getHeight() : src.getWidth();
+        int rotHeight = rotateDeg == 90 || rotateDeg == 270 ? src.getWidth() : src.getHeight();
+        float scaleX = (float)destWidth / rotWidth;
+        float scaleY = (float)destHeight / rotHeight;
+        if (crop) {
+            scaleX = Math.max(scaleX, scaleY);
+            scaleY = scaleX;
+        }
+
+        Matrix matrix = new Matrix();
+        matrix.setTranslate(-src.getWidth() / 2f, -src.getHeight() / 2f);
+        matrix.postRotate(rotateDeg);
+        matrix.postScale(scaleX, scaleY);
+        matrix.postTranslate(destWidth / 2f, destHeight / 2f);
+
+        Bitmap photo = pool.get(destWidth, destHeight, Bitmap.Config.ARGB_8888);
+        if (photo != null) {
+            photo.eraseColor(Color.BLACK);
+        }
+        else {
+            photo = Bitmap.createBitmap(destWidth, destHeight, Bitmap.Config.ARGB_8888);
+        }
+        Canvas canvas = new Canvas(photo);
+        canvas.drawBitmap(src, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        canvas.setBitmap(null);
+
+        return photo;
+    }
+
+    static Bitmap rotate(BitmapPool pool, Bitmap src, int rotateDeg) {
+        if (rotateDeg == 90 || rotateDeg == 270) {
+            return drawScaled(pool, src, rotateDeg, src.getHeight(), src.getWidth(), false);
+        }
+
+        return drawScaled(pool, src, rotateDeg, src.getWidth(), src.getHeight(), false);
+    }
+
+    private static void writePhoto(Bitmap photo, String destUri, Bundle exifData) throws IOException {
+        if (destUri == null) {
+            return;
+        }
+
+        FileOutputStream outStream = new FileOutputStream(destUri);
+        photo.compress(Bitmap.CompressFormat.JPEG, PHOTO_QUALITY, outStream);
+        outStream.close();
+
+        ExifInterfaceExtended destExif = new ExifInterfaceExtended(destUri);
+        destExif.copyFrom(exifData, true);
+        // since we rotated the photo orientation tag should be reset
+        destExif.setAttribute(ExifInterfaceExtended.TAG_EXIF_ORIENTATION,
+                String.valueOf(ExifInterfaceExtended.ORIENTATION_NORMAL));
+        destExif.saveAttributes();
+    }
+
 }
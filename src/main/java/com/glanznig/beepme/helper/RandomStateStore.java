@@ -0,0 +1,169 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme.helper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the state of a timer profile's random generator in a small binary file, so that
+ * the sequence of beep intervals continues where it stopped when the process is killed
+ * between two beeps. The seed the sequence started with is stored along with the state,
+ * so a study's schedule can be reproduced later on, and so is the state the interval
+ * distribution keeps between two intervals (see getDistributionState()).
+ */
+public class RandomStateStore {
+	
+	private static final int VERSION = 2;
+	
+	private File file;
+	private long seed = 0L;
+	private long distributionState = 0L;
+	// a single thread, so saves are written in the order they were requested
+	private final ThreadPoolExecutor executor;
+	
+	public RandomStateStore(File file) {
+		this.file = file;
+		
+		executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "random-state");
+				t.setPriority(Thread.NORM_PRIORITY - 1);
+				return t;
+			}
+		});
+		executor.allowCoreThreadTimeOut(true);
+	}
+	
+	/**
+	 * Returns the generator with the saved state, or a newly seeded one if there is
+	 * no (readable) saved state.
+	 */
+	public synchronized MersenneTwister restore() {
+		if (file.exists()) {
+			DataInputStream in = null;
+			try {
+				in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+				int version = in.readInt();
+				if (version == 1 || version == VERSION) {
+					long savedSeed = in.readLong();
+					MersenneTwister random = new MersenneTwister(in);
+					// version 1 did not keep a distribution state
+					long savedDistributionState = 0L;
+					if (version == VERSION) {
+						savedDistributionState = in.readLong();
+					}
+					seed = savedSeed;
+					distributionState = savedDistributionState;
+					return random;
+				}
+			}
+			catch (IOException ioe) {
+				// corrupt state, start a new sequence
+			}
+			finally {
+				if (in != null) {
+					try {
+						in.close();
+					}
+					catch (IOException ioe) {}
+				}
+			}
+		}
+		
+		// the generator only uses the lower 32 bits of the seed
+		seed = System.currentTimeMillis() & 0xffffffffL;
+		distributionState = 0L;
+		return new MersenneTwister(seed);
+	}
+	
+	/**
+	 * Writes the state to a temporary file first and then renames it, a process
+	 * that is killed while saving leaves the previous state intact.
+	 */
+	public synchronized boolean save(MersenneTwister random, long distributionState) {
+		File tmp = new File(file.getPath() + ".tmp");
+		FileOutputStream fos = null;
+		try {
+			fos = new FileOutputStream(tmp);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+			out.writeInt(VERSION);
+			out.writeLong(seed);
+			random.writeState(out);
+			out.writeLong(distributionState);
+			out.flush();
+			fos.getFD().sync();
+			out.close();
+			fos = null;
+			
+			this.distributionState = distributionState;
+			return tmp.renameTo(file);
+		}
+		catch (IOException ioe) {
+			return false;
+		}
+		finally {
+			if (fos != null) {
+				try {
+					fos.close();
+				}
+				catch (IOException ioe) {}
+				tmp.delete();
+			}
+		}
+	}
+	
+	/**
+	 * Saves a copy of the current state on a background thread, the generator can be
+	 * used on right away.
+	 */
+	public void saveInBackground(MersenneTwister random, final long distributionState) {
+		final MersenneTwister copy = (MersenneTwister)random.clone();
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				save(copy, distributionState);
+			}
+		});
+	}
+	
+	// seed of the current sequence, 0 before restore() was called
+	public synchronized long getSeed() {
+		return seed;
+	}
+	
+	// state of the interval distribution saved along with the generator, 0 if there is none
+	public synchronized long getDistributionState() {
+		return distributionState;
+	}
+}
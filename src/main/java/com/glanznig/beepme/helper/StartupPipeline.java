@@ -0,0 +1,198 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme.helper;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.util.Log;
+
+/**
+ * Runs the application startup as a number of named, timed stages. Stages either run
+ * right away on the calling thread or on a small background pool, where a stage only
+ * starts after the stages it depends on have finished. Code that needs the result of
+ * a stage calls {@link #await(String)}.
+ */
+public class StartupPipeline {
+	
+	private static final String TAG = "StartupPipeline";
+	
+	private static final int NUM_THREADS = 2;
+	
+	private final HashMap<String, CountDownLatch> stages = new HashMap<String, CountDownLatch>();
+	private final ExecutorService executor;
+	private final AtomicInteger pending = new AtomicInteger(0);
+	private final long created;
+	private volatile boolean finished = false;
+	private final AtomicBoolean logged = new AtomicBoolean(false);
+	
+	public StartupPipeline() {
+		created = System.nanoTime();
+		// stages are taken from the queue in submission order, so a stage can only
+		// block a worker while an earlier stage it depends on is already running
+		executor = new ThreadPoolExecutor(NUM_THREADS, NUM_THREADS, 1, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			private int count = 0;
+			
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "startup-" + (++count));
+				t.setPriority(Thread.NORM_PRIORITY - 1);
+				return t;
+			}
+		});
+		((ThreadPoolExecutor)executor).allowCoreThreadTimeOut(true);
+	}
+	
+	/**
+	 * Runs a stage on the calling thread.
+	 */
+	public void runNow(String name, Runnable stage) {
+		CountDownLatch done = register(name);
+		run(name, stage, done);
+	}
+	
+	/**
+	 * Runs a stage in the background after all stages it depends on have finished.
+	 * Dependencies have to be added before the stage that depends on them.
+	 */
+	public void submit(final String name, final Runnable stage, String... dependsOn) {
+		final CountDownLatch[] deps = new CountDownLatch[dependsOn.length];
+		synchronized (stages) {
+			for (int i = 0; i < dependsOn.length; i++) {
+				deps[i] = stages.get(dependsOn[i]);
+				if (deps[i] == null) {
+					throw new IllegalArgumentException("unknown stage " + dependsOn[i] + " for " + name);
+				}
+			}
+		}
+		
+		final CountDownLatch done = register(name);
+		pending.incrementAndGet();
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < deps.length; i++) {
+					awaitLatch(deps[i]);
+				}
+				StartupPipeline.this.run(name, stage, done);
+				
+				if (pending.decrementAndGet() == 0 && finished) {
+					logTotal();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Called after the last stage has been added.
+	 */
+	public void finish() {
+		finished = true;
+		executor.shutdown();
+		if (pending.get() == 0) {
+			logTotal();
+		}
+	}
+	
+	/**
+	 * Blocks until the given stage has finished. Returns immediately
+	 * for stages that are unknown to the pipeline.
+	 */
+	public void await(String name) {
+		CountDownLatch done;
+		synchronized (stages) {
+			done = stages.get(name);
+		}
+		if (done != null) {
+			awaitLatch(done);
+		}
+	}
+	
+	public void awaitAll() {
+		CountDownLatch[] all;
+		synchronized (stages) {
+			all = stages.values().toArray(new CountDownLatch[stages.size()]);
+		}
+		for (int i = 0; i < all.length; i++) {
+			awaitLatch(all[i]);
+		}
+	}
+	
+	private CountDownLatch register(String name) {
+		CountDownLatch done = new CountDownLatch(1);
+		synchronized (stages) {
+			if (stages.containsKey(name)) {
+				throw new IllegalArgumentException("stage " + name + " already added");
+			}
+			stages.put(name, done);
+		}
+		
+		return done;
+	}
+	
+	private void run(String name, Runnable stage, CountDownLatch done) {
+		long start = System.nanoTime();
+		try {
+			stage.run();
+		}
+		catch (RuntimeException re) {
+			Log.e(TAG, "stage " + name + " failed", re);
+		}
+		finally {
+			// waiting code must not hang if a stage failed
+			done.countDown();
+		}
+		
+		long duration = (System.nanoTime() - start) / 1000000;
+		Log.i(TAG, "stage " + name + " took " + duration + " ms on " + Thread.currentThread().getName());
+	}
+	
+	private void logTotal() {
+		if (!logged.compareAndSet(false, true)) {
+			return;
+		}
+		Log.i(TAG, "startup finished after " + (System.nanoTime() - created) / 1000000 + " ms");
+	}
+	
+	private static void awaitLatch(CountDownLatch latch) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				latch.await();
+				break;
+			}
+			catch (InterruptedException ie) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
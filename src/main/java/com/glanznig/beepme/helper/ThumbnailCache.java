@@ -0,0 +1,150 @@
+/*
+This file is part of BeepMe.
+
+BeepMe is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+BeepMe is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with BeepMe. If not, see <http://www.gnu.org/licenses/>.
+
+Copyright 2012-2014 Michael Glanznig
+http://beepme.yourexp.at
+*/
+
+package com.glanznig.beepme.helper;
+
+import java.io.File;
+import java.util.Iterator;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+
+/**
+ * Keeps decoded thumbnails in memory, keyed by the uri of the thumbnail file. The thumbnail
+ * files in the thumbs directory are the second level: a miss is decoded from there.
+ * Bitmaps handed out by the cache may still be shown by a view after they have been
+ * evicted, therefore they must never be recycled, neither by the cache nor by its users.
+ */
+public class ThumbnailCache {
+	
+	private static final String TAG = "ThumbnailCache";
+	
+	// fraction of the app's memory class that may be used for thumbnails
+	private static final int MEMORY_FRACTION = 8;
+	
+	private final LruCache<String, Bitmap> bitmaps;
+	
+	public ThumbnailCache(Context ctx) {
+		ActivityManager activityManager = (ActivityManager)ctx.getSystemService(Context.ACTIVITY_SERVICE);
+		int maxBytes = activityManager.getMemoryClass() * 1024 * 1024 / MEMORY_FRACTION;
+		
+		bitmaps = new LruCache<String, Bitmap>(maxBytes) {
+			@Override
+			protected int sizeOf(String uri, Bitmap bitmap) {
+				return bitmap.getByteCount();
+			}
+		};
+	}
+	
+	/**
+	 * Returns the thumbnail if it is in memory, null otherwise.
+	 */
+	public Bitmap get(String uri) {
+		if (uri == null) {
+			return null;
+		}
+		
+		return bitmaps.get(uri);
+	}
+	
+	/**
+	 * Returns the thumbnail, decoding it from its file if it is not in memory.
+	 * Must not be called on the main thread.
+	 */
+	public Bitmap load(String uri) {
+		return load(uri, 0, 0);
+	}
+	
+	/**
+	 * Like {@link #load(String)}, but a file that is a lot larger than the given size
+	 * is subsampled while decoding. Subsampled bitmaps are not kept in memory,
+	 * as the uri stands for the full thumbnail.
+	 */
+	public Bitmap load(String uri, int width, int height) {
+		Bitmap bitmap = get(uri);
+		if (bitmap == null && uri != null && new File(uri).exists()) {
+			BitmapFactory.Options opts = new BitmapFactory.Options();
+			if (width > 0 && height > 0) {
+				opts.inJustDecodeBounds = true;
+				BitmapFactory.decodeFile(uri, opts);
+				
+				int scale = 1;
+				while (opts.outWidth / scale / 2 >= width && opts.outHeight / scale / 2 >= height) {
+					scale *= 2;
+				}
+				opts.inJustDecodeBounds = false;
+				opts.inSampleSize = scale;
+			}
+			
+			bitmap = BitmapFactory.decodeFile(uri, opts);
+			if (bitmap == null) {
+				Log.w(TAG, "could not decode " + uri);
+			}
+			else if (opts.inSampleSize <= 1) {
+				bitmaps.put(uri, bitmap);
+			}
+		}
+		
+		return bitmap;
+	}
+	
+	public void put(String uri, Bitmap bitmap) {
+		if (uri != null && bitmap != null) {
+			bitmaps.put(uri, bitmap);
+		}
+	}
+	
+	public void remove(String uri) {
+		if (uri != null) {
+			bitmaps.remove(uri);
+		}
+	}
+	
+	/**
+	 * Removes all thumbnails whose uri starts with the given prefix,
+	 * e.g. all sizes of the thumbnail of one photo.
+	 */
+	public void removeAll(String uriPrefix) {
+		Iterator<String> uris = bitmaps.snapshot().keySet().iterator();
+		while (uris.hasNext()) {
+			String uri = uris.next();
+			if (uri.startsWith(uriPrefix)) {
+				bitmaps.remove(uri);
+			}
+		}
+	}
+	
+	public void trimToSize(int maxBytes) {
+		bitmaps.trimToSize(maxBytes);
+	}
+	
+	public int maxSize() {
+		return bitmaps.maxSize();
+	}
+	
+	public void evictAll() {
+		Log.i(TAG, "evicting all, " + bitmaps.toString());
+		bitmaps.evictAll();
+	}
+}
@@ -22,16 +22,15 @@ package com.glanznig.beepme.view;
 
 import java.lang.ref.WeakReference;
 import java.util.Calendar;
-import java.util.Date;
 
 import com.fima.glowpadview.GlowPadView;
 import com.fima.glowpadview.GlowPadView.OnTriggerListener;
 import com.glanznig.beepme.BeeperApp;
 import com.glanznig.beepme.R;
-import com.glanznig.beepme.data.Sample;
 import com.glanznig.beepme.db.SampleTable;
 import com.glanznig.beepme.db.ScheduledBeepTable;
 import com.glanznig.beepme.db.UptimeTable;
+import com.glanznig.beepme.helper.BeepAlarmReceiver;
 import com.glanznig.beepme.helper.BeepAlert;
 
 import android.app.Activity;
@@ -47,6 +46,7 @@ import android.util.Log;
 import android.view.KeyEvent;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.Window;
 import android.view.WindowManager;
 import android.widget.TextView;
@@ -101,6 +101,7 @@ public class BeepActivity extends Activity {
         @Override
     	public void onTrigger(View v, int target) {
     		final int resId = acceptDeclineHandle.getResourceIdForTarget(target);
+    		recordBeepTime(false, System.currentTimeMillis());
     		switch (resId) {
     			case R.drawable.ic_item_accept:
     				accept();
@@ -128,12 +129,18 @@ public class BeepActivity extends Activity {
     private static final String TAG = "BeepActivity";
 
 	public static final String CANCEL_INTENT = "com.glanznig.beepme.DECLINE_BEEP";
+	// set by BeepAlarmReceiver, which already recorded the beep as received
+	public static final String EXTRA_TIMESTAMP = "com.glanznig.beepme.BeepTimestamp";
+	public static final String EXTRA_NUM_ACCEPTED = "com.glanznig.beepme.NumAcceptedToday";
+	public static final String EXTRA_NUM_DECLINED = "com.glanznig.beepme.NumDeclinedToday";
+	public static final String EXTRA_UPTIME_DURATION = "com.glanznig.beepme.UptimeDurationToday";
     public static final int BEEP_TIMEOUT = 15;
 
     private GlowPadView acceptDeclineHandle;
     private GlowPadController glowPadCtrl = new GlowPadController();
 	
 	private long beepTimestamp;
+	private long beepId;
 	private BeepAlert alert = null;
 	private TimeoutHandler handler = null;
 	private BroadcastReceiver cancelReceiver = null;
@@ -153,15 +160,14 @@ public class BeepActivity extends Activity {
 
         final BeeperApp app = (BeeperApp)getApplication();
 
-        if (savedState != null) {
-            if (!savedState.containsKey("beepTimestamp")) {
-                // set beep timestamp to NOW
-                beepTimestamp = Calendar.getInstance().getTimeInMillis();
-                new ScheduledBeepTable(this.getApplicationContext()).receivedScheduledBeep(
-                        app.getPreferences().getScheduledBeepId(), beepTimestamp);
-            } else {
-                beepTimestamp = savedState.getLong("beepTimestamp");
-            }
+        final Intent intent = getIntent();
+        beepId = intent.getLongExtra(BeepAlarmReceiver.EXTRA_BEEP_ID, app.getPreferences().getScheduledBeepId());
+
+        if (savedState != null && savedState.containsKey("beepTimestamp")) {
+            beepTimestamp = savedState.getLong("beepTimestamp");
+        }
+        else if (intent.hasExtra(EXTRA_TIMESTAMP)) {
+            beepTimestamp = intent.getLongExtra(EXTRA_TIMESTAMP, 0L);
         }
         else {
             // set beep timestamp to NOW
@@ -207,10 +213,20 @@ public class BeepActivity extends Activity {
 		
 		alert = new BeepAlert(BeepActivity.this);
 		
-		SampleTable st = new SampleTable(this.getApplicationContext());
-		int numAccepted = st.getNumAcceptedToday();
-		int numDeclined = st.getSampleCountToday() - numAccepted;
-		long uptimeDur = new UptimeTable(this.getApplicationContext(), app.getTimerProfile()).getUptimeDurToday();
+		int numAccepted;
+		int numDeclined;
+		long uptimeDur;
+		if (intent.hasExtra(EXTRA_TIMESTAMP)) {
+			numAccepted = intent.getIntExtra(EXTRA_NUM_ACCEPTED, 0);
+			numDeclined = intent.getIntExtra(EXTRA_NUM_DECLINED, 0);
+			uptimeDur = intent.getLongExtra(EXTRA_UPTIME_DURATION, 0L);
+		}
+		else {
+			SampleTable st = new SampleTable(this.getApplicationContext());
+			numAccepted = st.getNumAcceptedToday();
+			numDeclined = st.getSampleCountToday() - numAccepted;
+			uptimeDur = new UptimeTable(this.getApplicationContext(), app.getTimerProfile()).getUptimeDurToday();
+		}
 		
 		TextView acceptedToday = (TextView)findViewById(R.id.beep_accepted_today);
 		TextView declinedToday = (TextView)findViewById(R.id.beep_declined_today);
@@ -267,12 +283,40 @@ public class BeepActivity extends Activity {
         view.setSystemUiVisibility(View.SYSTEM_UI_FLAG_LOW_PROFILE);
         setContentView(view);
 
+        // time to first frame of the beep screen
+        view.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                view.getViewTreeObserver().removeOnPreDrawListener(this);
+                recordBeepTime(true, System.currentTimeMillis());
+                return true;
+            }
+        });
+
         acceptDeclineHandle = (GlowPadView)findViewById(R.id.beep_glowpad);
         acceptDeclineHandle.setOnTriggerListener(glowPadCtrl);
         glowPadCtrl.startPinger();
         //acceptDeclineHandle.setShowTargetsOnIdle(true);
     }
 	
+    // latency bookkeeping, written off the main thread in the order of the calls
+    private void recordBeepTime(final boolean displayed, final long timestamp) {
+        final Context ctx = getApplicationContext();
+        final long id = beepId;
+        ((BeeperApp)getApplication()).getWriteExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                ScheduledBeepTable sbt = new ScheduledBeepTable(ctx);
+                if (displayed) {
+                    sbt.displayedScheduledBeep(id, timestamp);
+                }
+                else {
+                    sbt.reactedScheduledBeep(id, timestamp);
+                }
+            }
+        });
+    }
+	
 	public void accept() {
         hasAccepted = true;
 		if (alert != null) {
@@ -298,13 +342,7 @@ public class BeepActivity extends Activity {
             inDecline = true;
 
             BeeperApp app = (BeeperApp) getApplication();
-            Sample sample = new Sample();
-            sample.setTimestamp(new Date(beepTimestamp));
-            sample.setAccepted(false);
-            sample.setUptimeId(app.getPreferences().getUptimeId());
-            new SampleTable(this.getApplicationContext()).addSample(sample);
-            app.declineTimer();
-            app.setTimer();
+            app.declineBeep(beepTimestamp);
 
             if (!BeepActivity.this.isFinishing()) {
                 finish();
@@ -28,12 +28,14 @@ import java.util.Date;
 import java.util.Iterator;
 import java.util.Locale;
 
+import com.glanznig.beepme.BeeperApp;
 import com.glanznig.beepme.R;
 import com.glanznig.beepme.TagAutocompleteAdapter;
 import com.glanznig.beepme.data.Sample;
 import com.glanznig.beepme.data.Tag;
 import com.glanznig.beepme.db.SampleTable;
 import com.glanznig.beepme.helper.AsyncImageScaler;
+import com.glanznig.beepme.helper.PhotoLoader;
 import com.glanznig.beepme.helper.PhotoUtils;
 
 import android.app.ActionBar;
@@ -181,9 +183,14 @@ public class EditSampleActivity extends Activity implements OnClickListener, Pop
 		String thumbnailUri = PhotoUtils.getThumbnailUri(sample.getPhotoUri(), 48);
 		if (thumbnailUri != null) {
 			File thumb = new File(thumbnailUri);
-			if (thumb.exists()) {
+			Bitmap cached = ((BeeperApp)getApplication()).getThumbnailCache().get(thumbnailUri);
+			if (cached != null) {
+				photoView.setPhoto(cached);
+			}
+			else if (thumb.exists()) {
 				ImgLoadHandler handler = new ImgLoadHandler(photoView);
-				PhotoUtils.getAsyncBitmap(EditSampleActivity.this, thumbnailUri, handler);
+				((BeeperApp)getApplication()).getPhotoLoader().load(photoView, thumbnailUri, 0, 0,
+						PhotoLoader.PRIORITY_HIGH, handler);
 			}
 			else {
 				Handler handler = new Handler(EditSampleActivity.this);
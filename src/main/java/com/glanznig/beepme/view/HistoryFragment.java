@@ -25,6 +25,7 @@ import java.util.List;
 import com.glanznig.beepme.BeeperApp;
 import com.glanznig.beepme.HistoryListAdapter;
 import com.glanznig.beepme.R;
+import com.glanznig.beepme.data.DayStatistics;
 import com.glanznig.beepme.data.Statistics;
 
 import android.support.v4.app.ListFragment;
@@ -61,7 +62,7 @@ public class HistoryFragment extends ListFragment {
 	
 	private void populateList() {
 		BeeperApp app = (BeeperApp)getActivity().getApplication();
-		List<Bundle> statList = Statistics.getStats(getActivity(), app.getTimerProfile());
+		List<DayStatistics> statList = Statistics.getStats(getActivity(), app.getTimerProfile());
 		
         HistoryListAdapter historyAdapter = new HistoryListAdapter(getActivity(), statList);
         setListAdapter(historyAdapter);
@@ -23,7 +23,6 @@ package com.glanznig.beepme.view;
 import com.glanznig.beepme.BeeperApp;
 import com.glanznig.beepme.MainSectionsPagerAdapter;
 import com.glanznig.beepme.R;
-import com.glanznig.beepme.db.ScheduledBeepTable;
 
 import android.app.ActionBar;
 import android.app.ActionBar.Tab;
@@ -108,21 +107,7 @@ public class MainActivity extends FragmentActivity implements ActionBar.TabListe
 		invalidateOptionsMenu();
 		
 		//make sure that scheduled beeps do not expire due to an error
-		BeeperApp app = (BeeperApp)getApplication();
-		if (app.isBeeperActive()) {
-			long scheduledBeepId = app.getPreferences().getScheduledBeepId();
-			
-			if (scheduledBeepId != 0L) {
-				ScheduledBeepTable sbt = new ScheduledBeepTable(this.getApplicationContext());
-				if (sbt.getStatus(scheduledBeepId) != 3 && sbt.isExpired(scheduledBeepId)) {
-					app.expireTimer();
-					app.setTimer();
-				}
-			}
-			else {
-				app.setTimer();
-			}
-		}
+		((BeeperApp)getApplication()).checkTimer();
 	}
 	
 	@Override
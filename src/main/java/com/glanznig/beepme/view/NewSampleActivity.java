@@ -48,6 +48,7 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.Handler.Callback;
 import android.os.Message;
+import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.MenuItem;
 import android.view.View;
@@ -419,9 +420,10 @@ public class NewSampleActivity extends Activity implements OnClickListener, Popu
 
 	@Override
 	public boolean handleMessage(Message msg) {
-		if (msg.what == AsyncImageScaler.MSG_SUCCESS) {
-			Bitmap photoBitmap = (Bitmap)msg.obj;
-			if (photoBitmap != null && msg.arg1 == 48) {
+		if (msg.what == AsyncImageScaler.MSG_ALL_SUCCESS) {
+			@SuppressWarnings("unchecked")
+			Bitmap photoBitmap = ((SparseArray<Bitmap>)msg.obj).get(48);
+			if (photoBitmap != null) {
 				photoView.setPhoto(photoBitmap);
 				return true;
 			}
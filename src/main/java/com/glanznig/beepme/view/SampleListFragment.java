@@ -20,19 +20,14 @@ http://beepme.yourexp.at
 
 package com.glanznig.beepme.view;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-
 import com.glanznig.beepme.BeeperApp;
 import com.glanznig.beepme.R;
 import com.glanznig.beepme.SampleListAdapter;
 import com.glanznig.beepme.SampleListEntry;
-import com.glanznig.beepme.ListItem;
-import com.glanznig.beepme.DateListSectionHeader;
+import com.glanznig.beepme.SampleListSource;
 import com.glanznig.beepme.data.Sample;
+import com.glanznig.beepme.data.DayStatistics;
 import com.glanznig.beepme.data.Statistics;
-import com.glanznig.beepme.db.SampleTable;
 
 import android.content.Intent;
 import android.os.Bundle;
@@ -75,21 +70,9 @@ public class SampleListFragment extends ListFragment {
 	}
 	
 	private void populateList() {
-		List<Sample> samplesList = new SampleTable(getActivity().getApplicationContext()).getSamples();
-		ArrayList<ListItem> viewList = new ArrayList<ListItem>();
-		
-		Iterator<Sample> i = samplesList.iterator();
-		DateListSectionHeader header = null;
-		while (i.hasNext()) {
-			Sample s = i.next();
-			if (header == null || !header.isSameDay(s.getTimestamp())) {
-				header = new DateListSectionHeader(s.getTimestamp());
-				viewList.add(header);
-			}
-			viewList.add(new SampleListEntry(s));
-		}
+		SampleListSource source = new SampleListSource(getActivity().getApplicationContext());
 		
-        SampleListAdapter samples = new SampleListAdapter(getActivity(), viewList);
+        SampleListAdapter samples = new SampleListAdapter(getActivity(), source);
         setListAdapter(samples);
         
         ListView list = (ListView)getView().findViewById(android.R.id.list);
@@ -98,23 +81,11 @@ public class SampleListFragment extends ListFragment {
 	
 	private void updateStats() {
 		BeeperApp app = (BeeperApp)getActivity().getApplication();
-		Bundle stats = Statistics.getStatsOfToday(getActivity(), app.getTimerProfile());
+		DayStatistics stats = Statistics.getStatsOfToday(getActivity(), app.getTimerProfile());
 		
-		int numAccepted = 0;
-		int numDeclined = 0;
-		long uptimeDur = 0;
-		
-		if (stats != null) {
-			if (stats.containsKey("uptimeDuration")) {
-				uptimeDur = stats.getLong("uptimeDuration") / 1000;
-			}
-			if (stats.containsKey("acceptedSamples")) {
-				numAccepted = stats.getInt("acceptedSamples");
-			}
-			if (stats.containsKey("declinedSamples")) {
-				numDeclined = stats.getInt("declinedSamples");
-			}
-		}
+		int numAccepted = stats.getAccepted();
+		int numDeclined = stats.getDeclined();
+		long uptimeDur = stats.getUptimeDuration() / 1000;
 		
 		TextView acceptedToday = (TextView)getView().findViewById(R.id.samples_list_today_accepted);
 		TextView declinedToday = (TextView)getView().findViewById(R.id.samples_list_today_declined);
@@ -130,6 +101,9 @@ public class SampleListFragment extends ListFragment {
 	@Override
 	public void onListItemClick(ListView listView, View view, int position, long id) {
 		Sample s = ((SampleListEntry)listView.getItemAtPosition(position)).getSample();
+		if (s == null) {
+			return;
+		}
 		Intent i = new Intent(getActivity(), ViewSampleActivity.class);
 		i.putExtra(getActivity().getApplication().getClass().getPackage().getName() + ".SampleId", s.getId());
 		startActivity(i);
@@ -26,12 +26,14 @@ import java.text.DateFormat;
 import java.util.Calendar;
 import java.util.Iterator;
 
+import com.glanznig.beepme.BeeperApp;
 import com.glanznig.beepme.R;
 import com.glanznig.beepme.data.Sample;
 import com.glanznig.beepme.data.Tag;
 import com.glanznig.beepme.db.SampleTable;
 import com.glanznig.beepme.helper.AsyncImageScaler;
 import com.glanznig.beepme.helper.FlowLayout;
+import com.glanznig.beepme.helper.PhotoLoader;
 import com.glanznig.beepme.helper.PhotoUtils;
 
 import android.graphics.Bitmap;
@@ -42,6 +44,7 @@ import android.os.Message;
 import android.support.v4.app.Fragment;
 import android.util.DisplayMetrics;
 import android.util.Log;
+import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -53,6 +56,7 @@ public class ViewSampleFragment extends Fragment implements Callback {
 	private static final String TAG = "ViewSampleFragment";
 	private long sampleId = 0L;
 	private SamplePhotoView photoView; 
+	private int thumbnailSize;
 	
 	private static class ImgLoadHandler extends Handler {
 		WeakReference<SamplePhotoView> view;
@@ -90,6 +94,16 @@ public class ViewSampleFragment extends Fragment implements Callback {
 		populateFields();
 	}
 	
+	@Override
+	public void onPause() {
+		super.onPause();
+		
+		// pages that are swiped away do not need their photo any more
+		if (photoView != null) {
+			((BeeperApp)getActivity().getApplication()).getPhotoLoader().cancel(photoView);
+		}
+	}
+	
 	private void populateFields() {
 		
 		if (sampleId != 0L) {
@@ -171,7 +185,6 @@ public class ViewSampleFragment extends Fragment implements Callback {
 			photoView.setRights(false, false); // read only
 			DisplayMetrics metrics = getView().getContext().getResources().getDisplayMetrics();
 
-            int thumbnailSize;
 			if(!isLandscape()) {
 				photoView.setFrameWidth(LayoutParams.MATCH_PARENT);
                 thumbnailSize = (int)(metrics.widthPixels / metrics.density + 0.5f);
@@ -183,11 +196,23 @@ public class ViewSampleFragment extends Fragment implements Callback {
 			String thumbnailUri = PhotoUtils.getThumbnailUri(s.getPhotoUri(), thumbnailSize);
 			if (thumbnailUri != null) {
 				File thumb = new File(thumbnailUri);
-				if (thumb.exists()) {
+				Bitmap cached = ((BeeperApp)getActivity().getApplication()).getThumbnailCache().get(thumbnailUri);
+				if (cached != null) {
+					photoView.setPhoto(cached);
+				}
+				else if (thumb.exists()) {
 					ImgLoadHandler handler = new ImgLoadHandler(photoView);
-					PhotoUtils.getAsyncBitmap(getView().getContext(), thumbnailUri, handler);
+					((BeeperApp)getActivity().getApplication()).getPhotoLoader().load(photoView, thumbnailUri, 0, 0,
+							PhotoLoader.PRIORITY_HIGH, handler);
 				}
 				else {
+					// no thumbnail of this size (e.g. landscape or not created yet),
+					// show the photo itself, subsampled to the size of the screen
+					int size = (int)(thumbnailSize * metrics.density + 0.5f);
+					ImgLoadHandler imgHandler = new ImgLoadHandler(photoView);
+					((BeeperApp)getActivity().getApplication()).getPhotoLoader().loadPhoto(photoView, s.getPhotoUri(),
+							size, size, PhotoLoader.PRIORITY_HIGH, imgHandler);
+					
 					Handler handler = new Handler(this);
 					PhotoUtils.generateThumbnails(getView().getContext(), s.getPhotoUri(), handler);
 				}
@@ -200,8 +225,11 @@ public class ViewSampleFragment extends Fragment implements Callback {
 	
 	@Override
 	public boolean handleMessage(Message msg) {
-		if (msg.what == AsyncImageScaler.MSG_SUCCESS) {
-			Bitmap photoBitmap = (Bitmap)msg.obj;
+		if (msg.what == AsyncImageScaler.MSG_ALL_SUCCESS) {
+			@SuppressWarnings("unchecked")
+			SparseArray<Bitmap> thumbs = (SparseArray<Bitmap>)msg.obj;
+			// only the size being shown, a smaller one would replace the subsampled photo
+			Bitmap photoBitmap = thumbs.get(thumbnailSize);
 			if (photoBitmap != null) {
 				photoView.setPhoto(photoBitmap);
 				